@@ -0,0 +1,58 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of Alphabet.toInt over a block of message characters, by
+ *  alphabet size.  Rotor count and plugboard density do not affect an
+ *  Alphabet, so they are not parameters here.
+ *  @author Nathan Mehta
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AlphabetBenchmark {
+
+    /** Alphabet size. */
+    @Param({ "26", "64", "256" })
+    public int alphabetSize;
+
+    /** Number of characters looked up per invocation. */
+    static final int BLOCK = 1024;
+
+    /** Build the alphabet and the characters to look up. */
+    @Setup
+    public void setUp() {
+        BenchConfig config = new BenchConfig(alphabetSize, 5, 0);
+        _alphabet = config.alphabet();
+        _chars = config.message(BLOCK).toCharArray();
+    }
+
+    /** Look up a block of characters. */
+    @Benchmark
+    public void toInt(Blackhole sink) {
+        for (char ch : _chars) {
+            sink.consume(_alphabet.toInt(ch));
+        }
+    }
+
+    /** Alphabet measured. */
+    private Alphabet _alphabet;
+    /** Characters to look up. */
+    private char[] _chars;
+}
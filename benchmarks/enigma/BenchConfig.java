@@ -0,0 +1,168 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** Generated machine configurations for the benchmarks.  Everything is
+ *  derived from fixed seeds, so every run measures the same machines
+ *  and messages.
+ *  @author Nathan Mehta
+ */
+final class BenchConfig {
+
+    /** Seed for rotor wirings. */
+    static final long SEED = 61;
+
+    /** Seed for messages. */
+    static final long MESSAGE_SEED = 1918;
+
+    /** A configuration with an alphabet of SIZE symbols (even, at most
+     *  1000), NUMROTORS slots (at least 3: a reflector, a fixed rotor
+     *  and NUMROTORS - 2 moving rotors), and a plugboard swapping the
+     *  fraction PLUGDENSITY of the symbols. */
+    BenchConfig(int size, int numRotors, double plugDensity) {
+        Random rand = new Random(SEED);
+        _symbols = symbols(size);
+        _numRotors = numRotors;
+        _rotors = new ArrayList<>();
+        _rotors.add("R0 R " + pairs(rand, size / 2));
+        _rotors.add("N1 N " + cycles(rand));
+        for (int k = 2; k < numRotors; k += 1) {
+            char notch = _symbols.charAt(rand.nextInt(size));
+            _rotors.add("M" + k + " M" + notch + " " + cycles(rand));
+        }
+        _plugboard = pairs(rand, (int) (plugDensity * size / 2));
+        StringBuilder setting = new StringBuilder();
+        for (int k = 1; k < numRotors; k += 1) {
+            setting.append(_symbols.charAt(rand.nextInt(size)));
+        }
+        _setting = setting.toString();
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return new Alphabet(_symbols);
+    }
+
+    /** Return the text of my configuration file. */
+    String configText() {
+        StringBuilder text = new StringBuilder(_symbols).append('\n');
+        text.append(_numRotors).append(' ').append(_numRotors - 2)
+            .append('\n');
+        for (String rotor : _rotors) {
+            text.append(' ').append(rotor).append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Return the settings line setting up my machine. */
+    String settingsLine() {
+        StringBuilder line = new StringBuilder("*");
+        for (int k = 0; k < _numRotors; k += 1) {
+            line.append(' ').append(k == 0 ? "R0" : k == 1 ? "N1" : "M" + k);
+        }
+        return line.append(' ').append(_setting).append(' ')
+            .append(_plugboard).toString();
+    }
+
+    /** Return my machine, set up as settingsLine() describes. */
+    Machine machine() {
+        Alphabet alpha = alphabet();
+        List<Rotor> all = new ArrayList<>();
+        String[] names = new String[_numRotors];
+        for (int k = 0; k < _numRotors; k += 1) {
+            String[] desc = _rotors.get(k).split(" ", 3);
+            Permutation perm = new Permutation(desc[2], alpha);
+            names[k] = desc[0];
+            if (k == 0) {
+                all.add(new Reflector(desc[0], perm));
+            } else if (k == 1) {
+                all.add(new FixedRotor(desc[0], perm));
+            } else {
+                all.add(new MovingRotor(desc[0], perm, desc[1].substring(1)));
+            }
+        }
+        Machine mach = new Machine(alpha, _numRotors, _numRotors - 2, all);
+        mach.insertRotors(names);
+        mach.setRotors(_setting);
+        mach.setPlugboard(new Permutation(_plugboard, alpha));
+        return mach;
+    }
+
+    /** Return a message of LENGTH symbols of my alphabet. */
+    String message(int length) {
+        Random rand = new Random(MESSAGE_SEED);
+        StringBuilder msg = new StringBuilder(length);
+        for (int i = 0; i < length; i += 1) {
+            msg.append(_symbols.charAt(rand.nextInt(_symbols.length())));
+        }
+        return msg.toString();
+    }
+
+    /** Return SIZE distinct symbols, none of which is special in a
+     *  configuration file: letters and digits first, then letters beyond
+     *  ASCII. */
+    static String symbols(int size) {
+        String ascii = "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+            + "abcdefghijklmnopqrstuvwxyz0123456789";
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < size; i += 1) {
+            result.append(i < ascii.length() ? ascii.charAt(i)
+                          : (char) (0x100 + i - ascii.length()));
+        }
+        return result.toString();
+    }
+
+    /** Return a random permutation of my symbols in cycle notation,
+     *  using RAND. */
+    private String cycles(Random rand) {
+        List<Character> order = shuffled(rand);
+        StringBuilder result = new StringBuilder();
+        int i = 0;
+        while (i < order.size()) {
+            int len = 1 + rand.nextInt(Math.min(order.size() - i, 12));
+            result.append('(');
+            for (int j = i; j < i + len; j += 1) {
+                result.append(order.get(j));
+            }
+            result.append(") ");
+            i += len;
+        }
+        return result.toString().trim();
+    }
+
+    /** Return COUNT disjoint random swaps of my symbols in cycle
+     *  notation, using RAND. */
+    private String pairs(Random rand, int count) {
+        List<Character> order = shuffled(rand);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; i += 1) {
+            result.append('(').append(order.get(2 * i))
+                .append(order.get(2 * i + 1)).append(") ");
+        }
+        return result.toString().trim();
+    }
+
+    /** Return my symbols in an order shuffled by RAND. */
+    private List<Character> shuffled(Random rand) {
+        List<Character> order = new ArrayList<>();
+        for (int i = 0; i < _symbols.length(); i += 1) {
+            order.add(_symbols.charAt(i));
+        }
+        Collections.shuffle(order, rand);
+        return order;
+    }
+
+    /** Symbols of the alphabet. */
+    private final String _symbols;
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** Rotor descriptions, as in a configuration file, reflector first. */
+    private final List<String> _rotors;
+    /** Plugboard cycles. */
+    private final String _plugboard;
+    /** Initial rotor settings. */
+    private final String _setting;
+}
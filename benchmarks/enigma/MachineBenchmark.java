@@ -0,0 +1,88 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Machine.convert, one character at a time and a whole
+ *  message at a time, by alphabet size, rotor count, plugboard density
+ *  and message length.  Each invocation first returns the rotors to the
+ *  same settings, which is included in its time.
+ *  @author Nathan Mehta
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MachineBenchmark {
+
+    /** Alphabet size. */
+    @Param({ "26", "64", "256" })
+    public int alphabetSize;
+
+    /** Number of rotor slots. */
+    @Param({ "5", "8" })
+    public int rotors;
+
+    /** Fraction of symbols swapped by the plugboard. */
+    @Param({ "0", "0.5", "1" })
+    public double plugDensity;
+
+    /** Message length. */
+    @Param({ "64", "4096", "262144" })
+    public int length;
+
+    /** Build the machine and message. */
+    @Setup
+    public void setUp() {
+        BenchConfig config = new BenchConfig(alphabetSize, rotors,
+                                             plugDensity);
+        _machine = config.machine();
+        _start = config.settingsLine().split(" ")[rotors + 1];
+        String msg = config.message(length);
+        _message = msg;
+        _indices = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            _indices[i] = _machine.alphabet().toInt(msg.charAt(i));
+        }
+    }
+
+    /** Convert the message with convert(int). */
+    @Benchmark
+    public int convertChars() {
+        _machine.setRotors(_start);
+        int result = 0;
+        for (int c : _indices) {
+            result += _machine.convert(c);
+        }
+        return result;
+    }
+
+    /** Convert the message with convert(String). */
+    @Benchmark
+    public String convertString() {
+        _machine.setRotors(_start);
+        return _machine.convert(_message);
+    }
+
+    /** Machine measured. */
+    private Machine _machine;
+    /** Initial rotor settings. */
+    private String _start;
+    /** Message to convert. */
+    private String _message;
+    /** The message as indices. */
+    private int[] _indices;
+}
@@ -0,0 +1,110 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** End-to-end benchmarks of Main: reading a configuration file, then
+ *  reading, converting and writing a generated message file, by alphabet
+ *  size, rotor count, plugboard density and input size.  The input has
+ *  a settings line every SECTION characters and lines of 80 characters.
+ *  @author Nathan Mehta
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Dfile.encoding=UTF-8")
+public class MainBenchmark {
+
+    /** Alphabet size. */
+    @Param({ "26", "256" })
+    public int alphabetSize;
+
+    /** Number of rotor slots. */
+    @Param({ "5", "8" })
+    public int rotors;
+
+    /** Fraction of symbols swapped by the plugboard. */
+    @Param({ "0", "1" })
+    public double plugDensity;
+
+    /** Number of message characters in the input. */
+    @Param({ "65536", "4194304" })
+    public int inputSize;
+
+    /** Message characters per settings line. */
+    static final int SECTION = 1 << 14;
+
+    /** Message characters per line. */
+    static final int LINE = 80;
+
+    /** Write the configuration and input files. */
+    @Setup
+    public void setUp() throws IOException {
+        BenchConfig config = new BenchConfig(alphabetSize, rotors,
+                                             plugDensity);
+        _dir = Files.createTempDirectory("enigma-bench").toFile();
+        _config = new File(_dir, "bench.conf");
+        _input = new File(_dir, "bench.in");
+        _output = new File(_dir, "bench.out");
+        write(_config, config.configText());
+        String msg = config.message(inputSize);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < inputSize; i += LINE) {
+            if (i % SECTION == 0) {
+                text.append(config.settingsLine()).append('\n');
+            }
+            text.append(msg, i, Math.min(inputSize, i + LINE)).append('\n');
+        }
+        write(_input, text.toString());
+    }
+
+    /** Remove the files. */
+    @TearDown
+    public void tearDown() {
+        for (File file : new File[] { _config, _input, _output, _dir }) {
+            file.delete();
+        }
+    }
+
+    /** Process the input file as java enigma.Main CONFIG INPUT OUTPUT
+     *  would. */
+    @Benchmark
+    public void process() {
+        new Main(Arrays.asList(_config.getPath(), _input.getPath(),
+                               _output.getPath())).process();
+    }
+
+    /** Write TEXT to FILE in UTF-8, the default encoding in which Main
+     *  reads it in the forked benchmark JVMs. */
+    private static void write(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Directory holding the files. */
+    private File _dir;
+    /** Configuration file. */
+    private File _config;
+    /** Input file. */
+    private File _input;
+    /** Output file. */
+    private File _output;
+}
@@ -0,0 +1,76 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of Permutation.permute and Permutation.invert over a
+ *  block of indices, by alphabet size and plugboard density (the
+ *  permutation measured is the plugboard of a generated machine, so
+ *  density is the fraction of symbols it moves).
+ *  @author Nathan Mehta
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PermutationBenchmark {
+
+    /** Alphabet size. */
+    @Param({ "26", "64", "256" })
+    public int alphabetSize;
+
+    /** Fraction of symbols moved by the permutation. */
+    @Param({ "0", "0.5", "1" })
+    public double plugDensity;
+
+    /** Number of indices converted per invocation. */
+    static final int BLOCK = 1024;
+
+    /** Build the permutation and the indices to convert. */
+    @Setup
+    public void setUp() {
+        BenchConfig config = new BenchConfig(alphabetSize, 5, plugDensity);
+        _perm = config.machine().plugboard();
+        _indices = new int[BLOCK];
+        String msg = config.message(BLOCK);
+        Alphabet alpha = config.alphabet();
+        for (int i = 0; i < BLOCK; i += 1) {
+            _indices[i] = alpha.toInt(msg.charAt(i));
+        }
+    }
+
+    /** Permute a block of indices. */
+    @Benchmark
+    public void permute(Blackhole sink) {
+        for (int p : _indices) {
+            sink.consume(_perm.permute(p));
+        }
+    }
+
+    /** Invert a block of indices. */
+    @Benchmark
+    public void invert(Blackhole sink) {
+        for (int c : _indices) {
+            sink.consume(_perm.invert(c));
+        }
+    }
+
+    /** Permutation measured. */
+    private Permutation _perm;
+    /** Indices to convert. */
+    private int[] _indices;
+}
@@ -1,16 +1,60 @@
 package enigma;
 
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Nathan Mehta
  */
 class Alphabet {
-    /** alp. */
-    private String _alph;
+    /** The code points of this alphabet, in order. */
+    private int[] _codePoints;
+    /** When non-null, _dense[c] is 1 + the index of char C, or 0 if C is
+     *  absent.  Used when every symbol lies in the Basic Multilingual
+     *  Plane. */
+    private int[] _dense;
+    /** Open-addressed hash of code points, used in place of _dense when
+     *  the alphabet has supplementary code points.  Empty slots are -1. */
+    private int[] _hashKeys;
+    /** Index of the code point in the corresponding slot of _hashKeys. */
+    private int[] _hashVals;
+    /** Shift taking the product of a code point and HASH_MULTIPLIER to
+     *  its home slot in _hashKeys: 32 - log2(_hashKeys.length). */
+    private int _hashShift;
+
     /** A new alphabet containing CHARS. The K-th character has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
-        _alph = chars;
+        _codePoints = chars.codePoints().toArray();
+        int max = -1;
+        for (int cp : _codePoints) {
+            max = Math.max(max, cp);
+        }
+        if (max <= Character.MAX_VALUE) {
+            _dense = new int[max + 1];
+            for (int i = 0; i < _codePoints.length; i++) {
+                if (_dense[_codePoints[i]] != 0) {
+                    throw error("duplicate character in alphabet");
+                }
+                _dense[_codePoints[i]] = i + 1;
+            }
+        } else {
+            int cap = Integer.highestOneBit(_codePoints.length * 2 + 1) << 1;
+            _hashShift = Integer.numberOfLeadingZeros(cap) + 1;
+            _hashKeys = new int[cap];
+            _hashVals = new int[cap];
+            Arrays.fill(_hashKeys, -1);
+            for (int i = 0; i < _codePoints.length; i++) {
+                int slot = slot(_codePoints[i]);
+                if (_hashKeys[slot] != -1) {
+                    throw error("duplicate character in alphabet");
+                }
+                _hashKeys[slot] = _codePoints[i];
+                _hashVals[slot] = i;
+            }
+        }
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -20,25 +64,82 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return _alph.length();
+        return _codePoints.length;
+    }
+
+    /** Returns the number of bytes needed to hold an index of this
+     *  alphabet in binary files: 1, 2 or 4. */
+    int indexWidth() {
+        return size() <= 1 << 8 ? 1 : size() <= 1 << 16 ? 2 : 4;
     }
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        int val = _alph.indexOf(ch);
-        return (!(val == -1));
+        return toInt(ch) != -1;
+    }
+
+    /** Returns true if code point CP is in this alphabet. */
+    boolean containsCodePoint(int cp) {
+        return codePointToInt(cp) != -1;
+    }
+
+    /** Returns true iff some symbol of mine is a supplementary code
+     *  point, written as two chars, so that text in this alphabet must
+     *  be converted by code point rather than by char. */
+    boolean wide() {
+        return _dense == null;
     }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size().  It is an error if that symbol is a
+     *  supplementary code point, which no char can hold (see
+     *  toCodePoint). */
     char toChar(int index) {
-        return _alph.charAt(index);
+        int cp = _codePoints[index];
+        if (cp > Character.MAX_VALUE) {
+            throw error("symbol U+%X is not a single character", cp);
+        }
+        return (char) cp;
+    }
+
+    /** Returns code point number INDEX in the alphabet, where
+     *  0 <= INDEX < size(). */
+    int toCodePoint(int index) {
+        return _codePoints[index];
     }
 
     /** Returns the index of character CH which must be in
-     *  the alphabet. This is the inverse of toChar(). */
+     *  the alphabet. This is the inverse of toChar(). Returns -1 if
+     *  CH is absent. */
     int toInt(char ch) {
-        return _alph.indexOf(ch);
+        return codePointToInt(ch);
     }
 
+    /** Returns the index of code point CP, or -1 if CP is absent.  This
+     *  is the inverse of toCodePoint(). */
+    int codePointToInt(int cp) {
+        if (_dense != null) {
+            return cp >= 0 && cp < _dense.length ? _dense[cp] - 1 : -1;
+        }
+        int slot = slot(cp);
+        return _hashKeys[slot] == cp ? _hashVals[slot] : -1;
+    }
+
+    /** Returns the slot of _hashKeys holding CP, or the empty slot where
+     *  it would be inserted. */
+    private int slot(int cp) {
+        int mask = _hashKeys.length - 1;
+        int h = (cp * HASH_MULTIPLIER) >>> _hashShift;
+        while (true) {
+            h &= mask;
+            if (_hashKeys[h] == cp || _hashKeys[h] == -1) {
+                return h;
+            }
+            h += 1;
+        }
+    }
+
+    /** Fibonacci hashing multiplier: 2^32 divided by the golden ratio. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
 }
@@ -0,0 +1,227 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Runs many jobs, each a configuration file applied to an input file
+ *  and written to an output file, in one process.  Each distinct
+ *  configuration is read once and shared by its jobs, which run on a
+ *  bounded pool of worker threads.  A line per job, giving its status
+ *  and time, and a summary are reported in job order.
+ *  @author Nathan Mehta
+ */
+class Batch {
+
+    /** Number of worker threads. */
+    static final int WORKERS = Runtime.getRuntime().availableProcessors();
+
+    /** A job applying a configuration file to an input file and writing
+     *  an output file, and its outcome once run. */
+    static class Job {
+        /** A job from CONFIG and INPUT to OUTPUT. */
+        Job(String config, String input, String output) {
+            _config = config;
+            _input = input;
+            _output = output;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s -> %s", _config, _input, _output);
+        }
+
+        /** Configuration file name. */
+        private final String _config;
+        /** Input file name. */
+        private final String _input;
+        /** Output file name. */
+        private final String _output;
+        /** The message of the error that stopped me, or null. */
+        private String _error;
+        /** Time I took to run, in nanoseconds. */
+        private long _nanos;
+    }
+
+    /** A configuration file as read for the jobs that use it. */
+    private static class Config {
+        /** The configuration read from the file named NAME, or the error
+         *  that reading it raised. */
+        Config(String name) {
+            Main main = null;
+            EnigmaException error = null;
+            try {
+                main = new Main(name);
+            } catch (EnigmaException excp) {
+                error = excp;
+            }
+            _main = main;
+            _error = error;
+        }
+
+        /** The Main that read the configuration, or null. */
+        private final Main _main;
+        /** The error raised by reading the configuration, or null. */
+        private final EnigmaException _error;
+    }
+
+    /** A batch running JOBS, memory-mapping their files if MMAP, with
+     *  each job's Main given its options by SETOPTIONS. */
+    Batch(List<Job> jobs, boolean mmap, Consumer<Main> setOptions) {
+        _jobs = jobs;
+        _mmap = mmap;
+        _setOptions = setOptions;
+    }
+
+    /** Return the jobs described by ARGS, the non-option arguments to
+     *  main.  ARGS[0] is either a manifest file or a directory.  Each
+     *  line of a manifest that is not blank or a comment (starting with
+     *  '#') names a configuration, an input and an output file, relative
+     *  to the manifest's directory.  For a directory, there is a job for
+     *  each file NAME.in in it, using NAME.conf if present and otherwise
+     *  default.conf, and writing NAME.out in the directory ARGS[1]. */
+    static List<Job> jobs(List<String> args) {
+        File source = new File(args.get(0));
+        if (source.isDirectory()) {
+            if (args.size() < 2) {
+                throw error("--batch with a directory needs an output "
+                            + "directory");
+            }
+            return directoryJobs(source, new File(args.get(1)));
+        } else if (args.size() > 1) {
+            throw error("--batch with a manifest takes no output "
+                        + "directory");
+        }
+        return manifestJobs(source);
+    }
+
+    /** Return the jobs listed in the file MANIFEST. */
+    private static List<Job> manifestJobs(File manifest) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(manifest.toPath());
+        } catch (IOException excp) {
+            throw error("could not read %s", manifest);
+        }
+        File dir = manifest.getAbsoluteFile().getParentFile();
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i += 1) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] files = line.split("\\s+");
+            if (files.length != 3) {
+                throw error("%s:%d: expected CONFIG INPUT OUTPUT",
+                            manifest, i + 1);
+            }
+            jobs.add(new Job(resolve(dir, files[0]), resolve(dir, files[1]),
+                             resolve(dir, files[2])));
+        }
+        return jobs;
+    }
+
+    /** Return the jobs for the .in files in DIR, writing to OUTDIR. */
+    private static List<Job> directoryJobs(File dir, File outDir) {
+        String[] names = dir.list((d, name) -> name.endsWith(".in"));
+        if (names == null) {
+            throw error("could not read %s", dir);
+        }
+        Arrays.sort(names);
+        List<Job> jobs = new ArrayList<>();
+        for (String name : names) {
+            String base = name.substring(0, name.length() - ".in".length());
+            File config = new File(dir, base + ".conf");
+            if (!config.isFile()) {
+                config = new File(dir, "default.conf");
+            }
+            jobs.add(new Job(config.getPath(), new File(dir, name).getPath(),
+                             new File(outDir, base + ".out").getPath()));
+        }
+        return jobs;
+    }
+
+    /** Return NAME resolved against DIR, unless absolute. */
+    private static String resolve(File dir, String name) {
+        File file = new File(name);
+        return file.isAbsolute() ? name : new File(dir, name).getPath();
+    }
+
+    /** Run all my jobs, reporting on each to REPORT.  Returns true iff
+     *  all succeeded. */
+    boolean run(PrintStream report) {
+        long start = System.nanoTime();
+        HashMap<String, Config> configs = new HashMap<>();
+        for (Job job : _jobs) {
+            configs.computeIfAbsent(job._config, Config::new);
+        }
+        ExecutorService workers = Executors.newFixedThreadPool(WORKERS);
+        int failed = 0;
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (Job job : _jobs) {
+                Config config = configs.get(job._config);
+                results.add(workers.submit(() -> run(job, config)));
+            }
+            for (int i = 0; i < _jobs.size(); i += 1) {
+                results.get(i).get();
+                Job job = _jobs.get(i);
+                if (job._error != null) {
+                    failed += 1;
+                }
+                report.printf("%-6s %8.1f ms  %s%s%n",
+                              job._error == null ? "ok" : "FAILED",
+                              job._nanos / 1e6, job,
+                              job._error == null ? "" : ": " + job._error);
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw error("batch interrupted");
+        } finally {
+            workers.shutdownNow();
+        }
+        report.printf("%d jobs, %d failed, %.1f ms%n", _jobs.size(), failed,
+                      (System.nanoTime() - start) / 1e6);
+        report.flush();
+        return failed == 0;
+    }
+
+    /** Run JOB with its configuration CONFIG, recording its outcome and
+     *  time in JOB. */
+    private void run(Job job, Config config) {
+        long start = System.nanoTime();
+        try {
+            if (config._error != null) {
+                throw config._error;
+            }
+            Main main = new Main(config._main,
+                                 Arrays.asList(job._input, job._output),
+                                 _mmap);
+            _setOptions.accept(main);
+            main.process();
+        } catch (EnigmaException excp) {
+            job._error = excp.getMessage();
+        } catch (RuntimeException excp) {
+            job._error = excp.toString();
+        }
+        job._nanos = System.nanoTime() - start;
+    }
+
+    /** The jobs to run. */
+    private final List<Job> _jobs;
+    /** True iff job files are memory-mapped. */
+    private final boolean _mmap;
+    /** Sets the options of each job's Main. */
+    private final Consumer<Main> _setOptions;
+}
@@ -0,0 +1,111 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Batch class.
+ *  @author
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration with the naval rotors B, Beta, III, IV and I. */
+    private static final String CONFIG =
+        TestUtils.UPPER_STRING + "\n 5 3\n"
+        + " B R " + TestUtils.NAVALA.get("B") + "\n"
+        + " Beta N " + TestUtils.NAVALA.get("Beta") + "\n"
+        + " III MV " + TestUtils.NAVALA.get("III") + "\n"
+        + " IV MJ " + TestUtils.NAVALA.get("IV") + "\n"
+        + " I MQ " + TestUtils.NAVALA.get("I") + "\n";
+
+    /** Write TEXT to the file NAME in DIR. */
+    private static void write(File dir, String name, String text)
+        throws IOException {
+        Files.write(new File(dir, name).toPath(), text.getBytes());
+    }
+
+    /** Return the contents of the file NAME in DIR. */
+    private static String read(File dir, String name) throws IOException {
+        return new String(Files.readAllBytes(new File(dir, name).toPath()));
+    }
+
+    /** Return the output of running Main alone on CONFIG and INPUT in
+     *  DIR. */
+    private static String single(File dir, String config, String input)
+        throws IOException {
+        File out = new File(dir, "single.txt");
+        new Main(Arrays.asList(new File(dir, config).getPath(),
+                               new File(dir, input).getPath(),
+                               out.getPath())).process();
+        return read(dir, "single.txt");
+    }
+
+    /** Return a new temporary directory. */
+    private static File tempDir() throws IOException {
+        File dir = Files.createTempDirectory("batch").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testManifest() throws IOException {
+        File dir = tempDir();
+        write(dir, "a.conf", CONFIG);
+        write(dir, "bad.conf", "AB\n");
+        write(dir, "one.in", "* B Beta III IV I AXLE (HQ) (EX)\n"
+              + "FROM HIS SHOULDER HIAWATHA\n");
+        write(dir, "two.in", "* B Beta III IV I ZZZZ\nTAKES THE\n"
+              + "* B Beta III IV I AAAA (AB)\nCAMERA OF ROSEWOOD\n");
+        write(dir, "jobs", "# config input output\n"
+              + "a.conf one.in one.out\n\n"
+              + "bad.conf one.in bad.out\n"
+              + "a.conf two.in two.out\n");
+        List<Batch.Job> jobs =
+            Batch.jobs(Arrays.asList(new File(dir, "jobs").getPath()));
+        assertEquals(3, jobs.size());
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        assertFalse(new Batch(jobs, false, main -> { })
+                    .run(new PrintStream(report)));
+        assertEquals(single(dir, "a.conf", "one.in"), read(dir, "one.out"));
+        assertEquals(single(dir, "a.conf", "two.in"), read(dir, "two.out"));
+        String[] lines = report.toString().split("\\R");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("ok "));
+        assertTrue(lines[1].startsWith("FAILED "));
+        assertTrue(lines[2].startsWith("ok "));
+        assertTrue(lines[3].startsWith("3 jobs, 1 failed"));
+    }
+
+    @Test
+    public void testDirectory() throws IOException {
+        File dir = tempDir(), outDir = tempDir();
+        write(dir, "default.conf", CONFIG);
+        write(dir, "one.in", "* B Beta III IV I AXLE (HQ) (EX)\nHELLO\n");
+        write(dir, "two.in", "* B Beta III IV I ZZZZ\nWORLD\n");
+        List<Batch.Job> jobs = Batch.jobs(Arrays.asList(dir.getPath(),
+                                                        outDir.getPath()));
+        assertEquals(2, jobs.size());
+        assertTrue(new Batch(jobs, false, main -> { })
+                   .run(new PrintStream(new ByteArrayOutputStream())));
+        assertEquals(single(dir, "default.conf", "one.in"),
+                     read(outDir, "one.out"));
+        assertEquals(single(dir, "default.conf", "two.in"),
+                     read(outDir, "two.out"));
+    }
+}
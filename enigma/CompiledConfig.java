@@ -0,0 +1,302 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import static enigma.EnigmaException.*;
+
+/** A configuration (alphabet, numbers of slots and pawls, and available
+ *  rotors) with its rotors compiled, as read from a configuration file
+ *  in either of two forms: the text form that ConfigParser reads, or the
+ *  binary form that compile() writes (see --compile-config).  The binary
+ *  form holds each rotor's tables ready to use, so loading it takes one
+ *  read of the file and no parsing of cycles.  In either form, the
+ *  rotors are compiled only when first used (see RotorCatalog).
+ *
+ *  A binary configuration is a header (the int MAGIC, the short VERSION,
+ *  and the CRC-32C of the body as an int) followed by the body: the
+ *  alphabet (its length in bytes as an int, then UTF-8), the numbers of
+ *  slots, pawls and rotors (ints), and each rotor in turn.  A rotor is
+ *  its type (the byte 'M', 'N' or 'R'), its name (its length in bytes as
+ *  a short, then UTF-8), for 'M' rotors its notches as a bit mask of
+ *  (alphabet size + 63) / 64 longs, and its forward and inverse
+ *  permutation tables, each entry an index of 1, 2 or 4 bytes as the
+ *  alphabet size requires.  All numbers are big-endian.
+ *  @author Nathan Mehta
+ */
+class CompiledConfig {
+
+    /** First four bytes of a binary configuration ("ENGC"). */
+    static final int MAGIC = 0x454e4743;
+
+    /** Format version of binary configurations. */
+    static final short VERSION = 1;
+
+    /** A configuration with alphabet ALPHA, NUMROTORS slots, NUMPAWLS
+     *  pawls and the available rotors ROTORS. */
+    CompiledConfig(Alphabet alpha, int numRotors, int numPawls,
+                   RotorCatalog rotors) {
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _numPawls = numPawls;
+        _rotors = rotors;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return my number of pawls. */
+    int numPawls() {
+        return _numPawls;
+    }
+
+    /** Return my available rotors. */
+    RotorCatalog rotors() {
+        return _rotors;
+    }
+
+    /** Return the configuration in CONTENTS, the contents of the
+     *  configuration file named NAME, in either form. */
+    static CompiledConfig read(String name, byte[] contents) {
+        if (!isCompiled(contents)) {
+            String text = new String(contents, StandardCharsets.UTF_8);
+            return new ConfigParser(name, text).config();
+        }
+        ByteBuffer buf = ByteBuffer.wrap(contents);
+        try {
+            buf.getInt();
+            if (buf.getShort() != VERSION) {
+                throw error("%s: unsupported compiled configuration version",
+                            name);
+            }
+            int checksum = buf.getInt();
+            CRC32C crc = new CRC32C();
+            crc.update(contents, buf.position(), buf.remaining());
+            if ((int) crc.getValue() != checksum) {
+                throw error("%s: compiled configuration is corrupt "
+                            + "(bad checksum)", name);
+            }
+            return readBody(name, buf);
+        } catch (BufferUnderflowException | IllegalArgumentException
+                 | IndexOutOfBoundsException excp) {
+            throw error("%s: compiled configuration is corrupt", name);
+        }
+    }
+
+    /** Return true iff CONTENTS starts as a binary configuration does. */
+    static boolean isCompiled(byte[] contents) {
+        return contents.length >= 4
+            && ByteBuffer.wrap(contents).getInt() == MAGIC;
+    }
+
+    /** Write the configuration in the file named SOURCE, in either form,
+     *  to the file named DEST in binary form. */
+    static void compile(String source, String dest) {
+        byte[] contents;
+        try {
+            contents = Files.readAllBytes(Paths.get(source));
+        } catch (IOException excp) {
+            throw error("could not open %s", source);
+        }
+        byte[] compiled = read(source, contents).toBytes();
+        try {
+            Files.write(Paths.get(dest), compiled);
+        } catch (IOException excp) {
+            throw error("could not write %s", dest);
+        }
+    }
+
+    /** Return my binary form. */
+    byte[] toBytes() {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(body);
+        try {
+            int size = _alphabet.size(), width = _alphabet.indexWidth();
+            StringBuilder symbols = new StringBuilder();
+            for (int i = 0; i < size; i += 1) {
+                symbols.appendCodePoint(_alphabet.toCodePoint(i));
+            }
+            writeString(data, symbols.toString(), false);
+            data.writeInt(_numRotors);
+            data.writeInt(_numPawls);
+            data.writeInt(_rotors.size());
+            for (Rotor rotor : _rotors.all()) {
+                data.writeByte(rotor.reflecting() ? 'R'
+                               : rotor.rotates() ? 'M' : 'N');
+                writeString(data, rotor.name(), true);
+                if (rotor.rotates()) {
+                    for (long word : rotor.notchMask()) {
+                        data.writeLong(word);
+                    }
+                }
+                Permutation perm = rotor.permutation();
+                for (int i = 0; i < size; i += 1) {
+                    writeIndex(data, perm.permute(i), width);
+                }
+                for (int i = 0; i < size; i += 1) {
+                    writeIndex(data, perm.invert(i), width);
+                }
+            }
+            data.flush();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+        byte[] bytes = body.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        ByteBuffer result = ByteBuffer.allocate(10 + bytes.length);
+        result.putInt(MAGIC).putShort(VERSION).putInt((int) crc.getValue());
+        result.put(bytes);
+        return result.array();
+    }
+
+    /** Return the configuration in the body of a binary configuration
+     *  named NAME, read from BUF.  Only the names and extents of its
+     *  rotors are read here; each rotor is read and checked when it is
+     *  first used. */
+    private static CompiledConfig readBody(String name, ByteBuffer buf) {
+        Alphabet alpha = new Alphabet(readString(buf, false));
+        int size = alpha.size(), width = alpha.indexWidth();
+        int numRotors = buf.getInt(), numPawls = buf.getInt();
+        int count = buf.getInt();
+        Map<String, Integer> offsets = new LinkedHashMap<>();
+        for (int r = 0; r < count; r += 1) {
+            int offset = buf.position();
+            byte type = buf.get();
+            if (type != 'M' && type != 'N' && type != 'R') {
+                throw new IllegalArgumentException();
+            }
+            offsets.put(readString(buf, true), offset);
+            int skip = 2 * size * width;
+            if (type == 'M') {
+                skip += ((size + 63) >>> 6) * Long.BYTES;
+            }
+            buf.position(buf.position() + skip);
+        }
+        if (buf.hasRemaining()) {
+            throw new IllegalArgumentException();
+        }
+        byte[] contents = buf.array();
+        return new CompiledConfig(alpha, numRotors, numPawls,
+            new RotorCatalog(offsets, offset -> {
+                try {
+                    ByteBuffer rotor = ByteBuffer.wrap(contents);
+                    rotor.position(offset);
+                    return readRotor(rotor, alpha);
+                } catch (BufferUnderflowException
+                         | IllegalArgumentException | EnigmaException excp) {
+                    throw error("%s: compiled configuration is corrupt",
+                                name);
+                }
+            }));
+    }
+
+    /** Return the rotor read from BUF, with alphabet ALPHA. */
+    private static Rotor readRotor(ByteBuffer buf, Alphabet alpha) {
+        int size = alpha.size(), width = alpha.indexWidth();
+        byte type = buf.get();
+        String name = readString(buf, true);
+        long[] mask = new long[(size + 63) >>> 6];
+        if (type == 'M') {
+            for (int w = 0; w < mask.length; w += 1) {
+                mask[w] = buf.getLong();
+            }
+        }
+        int[] forward = readTable(buf, size, width);
+        int[] inverse = readTable(buf, size, width);
+        Permutation perm = new Permutation(forward, inverse, alpha);
+        switch (type) {
+        case 'M':
+            return new MovingRotor(name, perm, mask);
+        case 'N':
+            return new FixedRotor(name, perm);
+        case 'R':
+            return new Reflector(name, perm);
+        default:
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /** Return a table of SIZE indices of WIDTH bytes each read from
+     *  BUF.  The Permutation made from it checks its entries. */
+    private static int[] readTable(ByteBuffer buf, int size, int width) {
+        int[] table = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            int v;
+            if (width == 1) {
+                v = buf.get() & 0xff;
+            } else if (width == 2) {
+                v = buf.getShort() & 0xffff;
+            } else {
+                v = buf.getInt();
+            }
+            table[i] = v;
+        }
+        return table;
+    }
+
+    /** Write index V to DATA in WIDTH bytes. */
+    private static void writeIndex(DataOutputStream data, int v, int width)
+        throws IOException {
+        if (width == 1) {
+            data.writeByte(v);
+        } else if (width == 2) {
+            data.writeShort(v);
+        } else {
+            data.writeInt(v);
+        }
+    }
+
+    /** Write S to DATA as UTF-8, preceded by its length as a short if
+     *  ISSHORT and as an int otherwise. */
+    private static void writeString(DataOutputStream data, String s,
+                                    boolean isShort) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (isShort) {
+            if (bytes.length > Short.MAX_VALUE) {
+                throw error("name too long: %s", s);
+            }
+            data.writeShort(bytes.length);
+        } else {
+            data.writeInt(bytes.length);
+        }
+        data.write(bytes);
+    }
+
+    /** Return a string written by writeString(.., ISSHORT) read from
+     *  BUF. */
+    private static String readString(ByteBuffer buf, boolean isShort) {
+        int len = isShort ? buf.getShort() : buf.getInt();
+        if (len < 0) {
+            throw new IllegalArgumentException();
+        }
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** Number of pawls. */
+    private final int _numPawls;
+    /** Available rotors. */
+    private final RotorCatalog _rotors;
+}
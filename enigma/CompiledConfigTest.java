@@ -0,0 +1,118 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the CompiledConfig class.
+ *  @author
+ */
+public class CompiledConfigTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration with the naval rotors B, Beta, III, IV and I. */
+    private static final String CONFIG =
+        TestUtils.UPPER_STRING + "\n 5 3\n"
+        + " B R " + TestUtils.NAVALA.get("B") + "\n"
+        + " Beta N " + TestUtils.NAVALA.get("Beta") + "\n"
+        + " III MV " + TestUtils.NAVALA.get("III") + "\n"
+        + " IV MJ " + TestUtils.NAVALA.get("IV") + "\n"
+        + " I MQ " + TestUtils.NAVALA.get("I") + "\n";
+
+    /** Messages for CONFIG. */
+    private static final String INPUT =
+        "* B Beta III IV I AXLE (YF) (ZH)\n"
+        + "HYIHL BKOML IUYDC MPPSF SZW\nSQCNJ HXNUO TOBM\n";
+
+    /** Return the output of Main run on the configuration file CONFIG
+     *  with INPUT. */
+    private static String run(File config) throws IOException {
+        File in = File.createTempFile("input", null),
+            out = File.createTempFile("output", null);
+        in.deleteOnExit();
+        out.deleteOnExit();
+        Files.write(in.toPath(), INPUT.getBytes());
+        new Main(Arrays.asList(config.getPath(), in.getPath(),
+                               out.getPath())).process();
+        return new String(Files.readAllBytes(out.toPath()));
+    }
+
+    /** Return a new temporary file holding CONTENTS. */
+    private static File temp(byte[] contents) throws IOException {
+        File file = File.createTempFile("config", ".conf");
+        file.deleteOnExit();
+        Files.write(file.toPath(), contents);
+        return file;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRoundTrip() {
+        CompiledConfig text =
+            CompiledConfig.read("c.conf", CONFIG.getBytes());
+        byte[] bytes = text.toBytes();
+        assertTrue(CompiledConfig.isCompiled(bytes));
+        assertFalse(CompiledConfig.isCompiled(CONFIG.getBytes()));
+        CompiledConfig compiled = CompiledConfig.read("c.bin", bytes);
+        assertEquals(0, compiled.rotors().compiled());
+        assertEquals(5, compiled.numRotors());
+        assertEquals(3, compiled.numPawls());
+        assertEquals(26, compiled.alphabet().size());
+        assertEquals(5, compiled.rotors().size());
+        for (int r = 0; r < 5; r += 1) {
+            Rotor want = text.rotors().all().get(r),
+                got = compiled.rotors().all().get(r);
+            assertEquals(want.name(), got.name());
+            assertEquals(want.rotates(), got.rotates());
+            assertEquals(want.reflecting(), got.reflecting());
+            assertEquals(want.notches(), got.notches());
+            for (int i = 0; i < 26; i += 1) {
+                assertEquals(want.permutation().permute(i),
+                             got.permutation().permute(i));
+                assertEquals(want.permutation().invert(i),
+                             got.permutation().invert(i));
+            }
+        }
+        assertArrayEquals(bytes, compiled.toBytes());
+    }
+
+    @Test
+    public void testCompiledFile() throws IOException {
+        File source = temp(CONFIG.getBytes());
+        File dest = File.createTempFile("config", ".bin");
+        dest.deleteOnExit();
+        CompiledConfig.compile(source.getPath(), dest.getPath());
+        assertEquals(run(source), run(dest));
+    }
+
+    @Test
+    public void testCorrupt() {
+        byte[] bytes =
+            CompiledConfig.read("c.conf", CONFIG.getBytes()).toBytes();
+        bytes[bytes.length / 2] ^= 1;
+        try {
+            CompiledConfig.read("c.bin", bytes);
+            fail("corrupt configuration accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("c.bin: compiled configuration is corrupt "
+                         + "(bad checksum)", excp.getMessage());
+        }
+        try {
+            CompiledConfig.read("c.bin", Arrays.copyOf(bytes, 12));
+            fail("truncated configuration accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().startsWith("c.bin: compiled"));
+        }
+    }
+}
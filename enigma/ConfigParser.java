@@ -0,0 +1,311 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A one-pass parser for the text of a configuration file: an alphabet,
+ *  the number of rotor slots and of pawls, and then any number of rotor
+ *  descriptions, each a name, a type (M followed by its notches, N or R)
+ *  and a permutation in cycle notation, all separated by whitespace.
+ *  The parser reads the text a character at a time, with no regular
+ *  expressions or intermediate strings of cycles, and fills each
+ *  rotor's permutation table as it reads the cycles, so the time it
+ *  takes is linear in the length of the text.  Errors give the line and
+ *  column at which they were found.  For a catalog (see catalog()), it
+ *  reads only as far as needed to find where each rotor's description
+ *  starts, and parses the rest of a description when the rotor is first
+ *  used.
+ *  @author Nathan Mehta
+ */
+class ConfigParser {
+
+    /** A parser for TEXT, the contents of the configuration file named
+     *  NAME, which reads its alphabet and numbers of slots and pawls. */
+    ConfigParser(String name, String text) {
+        _name = name;
+        _text = text;
+        skipSpace();
+        int start = _pos;
+        String alpha = token("alphabet");
+        for (int i = 0; i < alpha.length(); i += 1) {
+            char ch = alpha.charAt(i);
+            if (ch == '(' || ch == ')' || ch == '*') {
+                throw error(start + i, "invalid alphabet: '%c' not allowed",
+                            ch);
+            }
+        }
+        try {
+            _alphabet = new Alphabet(alpha);
+        } catch (EnigmaException excp) {
+            throw error(start, "invalid alphabet: %s", excp.getMessage());
+        }
+        _numRotors = number("number of rotor slots");
+        _numPawls = number("number of pawls");
+    }
+
+    /** Return the alphabet of the configuration. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots of the configuration. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls of the configuration. */
+    int numPawls() {
+        return _numPawls;
+    }
+
+    /** Return the configuration, with a catalog of the rotor
+     *  descriptions not yet read. */
+    CompiledConfig config() {
+        return new CompiledConfig(_alphabet, _numRotors, _numPawls,
+                                  catalog());
+    }
+
+    /** Return a catalog of the rotor descriptions not yet read, which
+     *  are checked here only for their form: a name, a valid type and
+     *  cycles in parentheses.  The rest of a description (whether its
+     *  notches and cycles hold only members of the alphabet, each at most
+     *  once) is checked when its rotor is compiled. */
+    RotorCatalog catalog() {
+        Map<String, Integer> offsets = new LinkedHashMap<>();
+        while (!atEnd()) {
+            int start = _pos;
+            if (_text.charAt(start) == '(') {
+                throw error(start, "expected a rotor name, not a cycle");
+            }
+            String name = token("rotor name");
+            skipSpace();
+            int typeStart = _pos;
+            String type = token("type of rotor " + name);
+            if ("MNR".indexOf(type.charAt(0)) == -1) {
+                throw error(typeStart, "invalid type %s for rotor %s", type,
+                            name);
+            }
+            skipCycles();
+            offsets.put(name, start);
+        }
+        return new RotorCatalog(offsets, this::rotorAt);
+    }
+
+    /** Return the rotor whose description starts at position POS. */
+    private synchronized Rotor rotorAt(int pos) {
+        _pos = pos;
+        return rotor();
+    }
+
+    /** Return true iff there are no more rotor descriptions. */
+    boolean atEnd() {
+        skipSpace();
+        return _pos == _text.length();
+    }
+
+    /** Return the rotor described next. */
+    Rotor rotor() {
+        skipSpace();
+        int start = _pos;
+        if (start < _text.length() && _text.charAt(start) == '(') {
+            throw error(start, "expected a rotor name, not a cycle");
+        }
+        String name = token("rotor name");
+        skipSpace();
+        int typeStart = _pos;
+        String type = token("type of rotor " + name);
+        Permutation perm = new Permutation(cycles(), _alphabet);
+        switch (type.charAt(0)) {
+        case 'M':
+            for (int i = 1; i < type.length(); ) {
+                int cp = type.codePointAt(i);
+                if (!_alphabet.containsCodePoint(cp)) {
+                    throw error(typeStart + i, "notch '%s' not in alphabet",
+                                new String(Character.toChars(cp)));
+                }
+                i += Character.charCount(cp);
+            }
+            return new MovingRotor(name, perm, type.substring(1));
+        case 'N':
+            return new FixedRotor(name, perm);
+        case 'R':
+            return new Reflector(name, perm);
+        default:
+            throw error(typeStart, "invalid type %s for rotor %s", type,
+                        name);
+        }
+    }
+
+    /** Return the permutation table given by the cycles (possibly none)
+     *  that follow, in which index K maps to element K. */
+    private int[] cycles() {
+        int size = _alphabet.size();
+        int[] forward = new int[size];
+        boolean[] seen = new boolean[size];
+        for (int i = 0; i < size; i += 1) {
+            forward[i] = i;
+        }
+        while (true) {
+            skipSpace();
+            if (_pos == _text.length() || _text.charAt(_pos) != '(') {
+                return forward;
+            }
+            do {
+                cycle(forward, seen);
+            } while (_pos < _text.length() && _text.charAt(_pos) == '(');
+            if (_pos < _text.length()
+                && !Character.isWhitespace(_text.codePointAt(_pos))) {
+                throw error(_pos, "expected '(' or whitespace after ')'");
+            }
+        }
+    }
+
+    /** Advance past the cycles (possibly none) that follow, checking
+     *  only that each is closed. */
+    private void skipCycles() {
+        while (true) {
+            skipSpace();
+            if (_pos == _text.length() || _text.charAt(_pos) != '(') {
+                return;
+            }
+            do {
+                int open = _pos;
+                _pos = _text.indexOf(')', open);
+                if (_pos == -1) {
+                    throw error(open, "unterminated cycle");
+                }
+                for (int i = open + 1; i < _pos; i += 1) {
+                    char ch = _text.charAt(i);
+                    if (ch == '(' || Character.isWhitespace(ch)) {
+                        throw error(open, "unterminated cycle");
+                    }
+                }
+                _pos += 1;
+            } while (_pos < _text.length() && _text.charAt(_pos) == '(');
+            if (_pos < _text.length()
+                && !Character.isWhitespace(_text.codePointAt(_pos))) {
+                throw error(_pos, "expected '(' or whitespace after ')'");
+            }
+        }
+    }
+
+    /** Read the cycle starting at the current position, which holds '(',
+     *  into FORWARD, marking its elements in SEEN. */
+    private void cycle(int[] forward, boolean[] seen) {
+        int open = _pos;
+        _pos += 1;
+        int first = -1, prev = -1;
+        while (true) {
+            if (_pos == _text.length()) {
+                throw error(open, "unterminated cycle");
+            }
+            int cp = _text.codePointAt(_pos);
+            if (cp == ')') {
+                _pos += 1;
+                break;
+            }
+            int k = _alphabet.codePointToInt(cp);
+            if (k == -1) {
+                if (Character.isWhitespace(cp) || cp == '(') {
+                    throw error(open, "unterminated cycle");
+                }
+                throw error(_pos, "'%s' not in alphabet",
+                            new String(Character.toChars(cp)));
+            } else if (seen[k]) {
+                throw error(_pos, "'%s' appears in two cycles",
+                            new String(Character.toChars(cp)));
+            }
+            seen[k] = true;
+            if (prev == -1) {
+                first = k;
+            } else {
+                forward[prev] = k;
+            }
+            prev = k;
+            _pos += Character.charCount(cp);
+        }
+        if (prev != -1) {
+            forward[prev] = first;
+        }
+    }
+
+    /** Return the non-negative integer that comes next, described by
+     *  WHAT in error messages. */
+    private int number(String what) {
+        skipSpace();
+        int start = _pos;
+        String digits = token(what);
+        for (int i = 0; i < digits.length(); i += 1) {
+            if (!Character.isDigit(digits.charAt(i))) {
+                throw error(start, "expected %s, found %s", what, digits);
+            }
+        }
+        try {
+            return Integer.parseInt(digits);
+        } catch (NumberFormatException excp) {
+            throw error(start, "%s too large", what);
+        }
+    }
+
+    /** Return the token (a maximal sequence of non-whitespace characters)
+     *  at the current position, described by WHAT in error messages. */
+    private String token(String what) {
+        int start = _pos;
+        while (_pos < _text.length()) {
+            int cp = _text.codePointAt(_pos);
+            if (Character.isWhitespace(cp)) {
+                break;
+            }
+            _pos += Character.charCount(cp);
+        }
+        if (start == _pos) {
+            throw error(start, "configuration file truncated: expected %s",
+                        what);
+        }
+        return _text.substring(start, _pos);
+    }
+
+    /** Advance past whitespace. */
+    private void skipSpace() {
+        while (_pos < _text.length()) {
+            int cp = _text.codePointAt(_pos);
+            if (!Character.isWhitespace(cp)) {
+                return;
+            }
+            _pos += Character.charCount(cp);
+        }
+    }
+
+    /** Return an EnigmaException for an error at position POS of my
+     *  text, with a message formatted from MSGFORMAT and ARGS. */
+    private EnigmaException error(int pos, String msgFormat,
+                                  Object... args) {
+        int line = 1, column = 1;
+        for (int i = 0; i < pos; i += 1) {
+            char ch = _text.charAt(i);
+            boolean crlf = ch == '\r' && i + 1 < _text.length()
+                && _text.charAt(i + 1) == '\n';
+            if (ch == '\n' || ch == '\r' && !crlf) {
+                line += 1;
+                column = 1;
+            } else if (!Character.isLowSurrogate(ch)) {
+                column += 1;
+            }
+        }
+        return EnigmaException.error("%s:%d:%d: %s", _name, line, column,
+                                     String.format(msgFormat, args));
+    }
+
+    /** Name of the configuration file. */
+    private final String _name;
+    /** Contents of the configuration file. */
+    private final String _text;
+    /** Position of the next character of _text to read. */
+    private int _pos;
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** Number of pawls. */
+    private final int _numPawls;
+}
@@ -0,0 +1,138 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the ConfigParser class.
+ *  @author
+ */
+public class ConfigParserTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the message of the error raised by parsing TEXT entirely,
+     *  or null if there is none. */
+    private String parseError(String text) {
+        try {
+            ConfigParser parser = new ConfigParser("c.conf", text);
+            while (!parser.atEnd()) {
+                parser.rotor();
+            }
+            return null;
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRotors() {
+        ConfigParser parser = new ConfigParser("c.conf",
+            "ABCD\n 3 1\n R1 R (AC) (BD)\n N1 N\n"
+            + " M1 MBD (ABC)(D)\tM2 MA\r\n(DC)");
+        assertEquals(4, parser.alphabet().size());
+        assertEquals(3, parser.numRotors());
+        assertEquals(1, parser.numPawls());
+
+        Rotor r1 = parser.rotor();
+        assertTrue(r1.reflecting());
+        assertEquals("R1", r1.name());
+        assertEquals(2, r1.permutation().permute(0));
+        assertEquals(1, r1.permutation().invert(3));
+
+        Rotor n1 = parser.rotor();
+        assertFalse(n1.rotates());
+        assertEquals(3, n1.permutation().permute(3));
+
+        Rotor m1 = parser.rotor();
+        assertTrue(m1.rotates());
+        assertEquals("BD", m1.notches());
+        assertEquals(1, m1.permutation().permute(0));
+        assertEquals(0, m1.permutation().permute(2));
+        assertEquals(3, m1.permutation().permute(3));
+
+        Rotor m2 = parser.rotor();
+        assertEquals("M2", m2.name());
+        assertEquals(2, m2.permutation().permute(3));
+        assertTrue(parser.atEnd());
+    }
+
+    @Test
+    public void testCatalog() {
+        RotorCatalog catalog = new ConfigParser("c.conf",
+            "ABCD\n 3 1\n R1 R (AC) (BD)\n N1 N (AE)\n"
+            + " M1 MB (ABC)(D)\n M1 MD (AD)\n").catalog();
+        assertEquals(3, catalog.size());
+        assertEquals(0, catalog.compiled());
+        Rotor m1 = catalog.get("M1");
+        assertEquals("D", m1.notches());
+        assertEquals(3, m1.permutation().permute(0));
+        assertSame(m1, catalog.get("M1"));
+        assertTrue(catalog.get("R1").reflecting());
+        assertNull(catalog.get("M2"));
+        assertEquals(2, catalog.compiled());
+        try {
+            catalog.get("N1");
+            fail("rotor with bad cycle compiled");
+        } catch (EnigmaException excp) {
+            assertEquals("c.conf:4:9: 'E' not in alphabet",
+                         excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testCatalogErrors() {
+        String[][] cases = {
+            { "c.conf:3:6: unterminated cycle", "ABCD\n3 1\nR1 R (AB CD)" },
+            { "c.conf:3:4: invalid type X for rotor R1",
+              "ABCD\n3 1\nR1 X (AB)" },
+            { "c.conf:3:10: expected '(' or whitespace after ')'",
+              "ABCD\n3 1\nR1 R (AB)C" },
+            { "c.conf:3:1: expected a rotor name, not a cycle",
+              "ABCD\n3 1\n(AB)" },
+        };
+        for (String[] c : cases) {
+            try {
+                new ConfigParser("c.conf", c[1]).catalog();
+                fail("accepted " + c[1]);
+            } catch (EnigmaException excp) {
+                assertEquals(c[0], excp.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testErrorPositions() {
+        assertEquals("c.conf:2:2: configuration file truncated: "
+                     + "expected alphabet", parseError(" \n "));
+        assertEquals("c.conf:1:3: invalid alphabet: '(' not allowed",
+                     parseError("AB(C 3 1"));
+        assertEquals("c.conf:2:3: expected number of pawls, found x",
+                     parseError("ABC\n3 x"));
+        assertEquals("c.conf:3:8: 'E' not in alphabet",
+                     parseError("ABCD\n3 1\nR1 R (AE)"));
+        assertEquals("c.conf:3:12: 'A' appears in two cycles",
+                     parseError("ABCD\n3 1\nR1 R (AB)(CA)"));
+        assertEquals("c.conf:3:6: unterminated cycle",
+                     parseError("ABCD\n3 1\nR1 R (AB CD)"));
+        assertEquals("c.conf:3:10: expected '(' or whitespace after ')'",
+                     parseError("ABCD\r\n3 1\r\nR1 R (AB)C"));
+        assertEquals("c.conf:4:6: notch 'Z' not in alphabet",
+                     parseError("ABCD\n3 1\nR1 R\nM1 MAZ"));
+        assertEquals("c.conf:3:4: invalid type X for rotor R1",
+                     parseError("ABCD\n3 1\nR1 X (AB)"));
+        assertEquals("c.conf:4:1: configuration file truncated: "
+                     + "expected type of rotor R1",
+                     parseError("ABCD\n3 1\nR1 \n"));
+        assertEquals("c.conf:3:1: expected a rotor name, not a cycle",
+                     parseError("ABCD\n3 1\n(AB)"));
+        assertNull(parseError("ABCD\n3 1\nR1 R (AB) (CD)\n"));
+    }
+}
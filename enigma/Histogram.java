@@ -0,0 +1,117 @@
+package enigma;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A histogram of non-negative long values, such as latencies in
+ *  nanoseconds, laid out as in HdrHistogram: values below 2^SUB_BITS
+ *  have a bucket each, and every larger power-of-two range is split
+ *  into 2^(SUB_BITS - 1) equal buckets, so that any value is reported
+ *  to within a relative error of 2^(1 - SUB_BITS) (about 3%).  Counts are
+ *  striped (LongAdder), so recording from many threads at once does not
+ *  contend, and recording never allocates.
+ *  @author Nathan Mehta
+ */
+class Histogram {
+
+    /** Number of bits of precision kept in each value. */
+    static final int SUB_BITS = 6;
+
+    /** An empty histogram. */
+    Histogram() {
+        _counts = new LongAdder[index(Long.MAX_VALUE) + 1];
+        for (int i = 0; i < _counts.length; i += 1) {
+            _counts[i] = new LongAdder();
+        }
+    }
+
+    /** Record VALUE, taking negative values as 0. */
+    void record(long value) {
+        value = Math.max(0, value);
+        _counts[index(value)].increment();
+        _sum.add(value);
+        _max.accumulate(value);
+    }
+
+    /** Return the number of values recorded. */
+    long count() {
+        long count = 0;
+        for (LongAdder bucket : _counts) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /** Return the largest value recorded, or 0 if none. */
+    long max() {
+        return _max.get();
+    }
+
+    /** Return the mean of the values recorded, or 0 if none. */
+    double mean() {
+        long count = count();
+        return count == 0 ? 0 : (double) _sum.sum() / count;
+    }
+
+    /** Return the smallest recorded value (to within my precision) that
+     *  is at least PERCENTILE percent of the values recorded, or 0 if
+     *  none.  Values recorded meanwhile may or may not be counted. */
+    long valueAt(double percentile) {
+        long[] counts = new long[_counts.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i += 1) {
+            counts[i] = _counts[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i += 1) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max());
+            }
+        }
+        return max();
+    }
+
+    /** Forget all values recorded. */
+    void reset() {
+        for (LongAdder bucket : _counts) {
+            bucket.reset();
+        }
+        _sum.reset();
+        _max.reset();
+    }
+
+    /** Return the index of the bucket holding VALUE >= 0. */
+    static int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift << (SUB_BITS - 1)) + (int) (value >>> shift);
+    }
+
+    /** Return the largest value held by bucket I. */
+    static long highest(int i) {
+        if (i < SUB_COUNT) {
+            return i;
+        }
+        int shift = (i >>> (SUB_BITS - 1)) - 1;
+        long top = (i & (SUB_COUNT / 2 - 1)) + SUB_COUNT / 2;
+        return ((top + 1) << shift) - 1;
+    }
+
+    /** Number of values with a bucket each. */
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /** Number of values in each bucket. */
+    private final LongAdder[] _counts;
+    /** Sum of the values recorded. */
+    private final LongAdder _sum = new LongAdder();
+    /** Largest value recorded. */
+    private final LongAccumulator _max = new LongAccumulator(Math::max, 0);
+}
@@ -0,0 +1,222 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** Normalizes the text of message lines, converts it with a machine, and
+ *  writes the result in groups of five.  Whitespace is dropped, case may
+ *  be folded, and characters outside the machine's alphabet are handled
+ *  according to an Invalid policy, all in one pass with no intermediate
+ *  Strings.  Output accumulates in a fixed buffer.
+ *  @author Nathan Mehta
+ */
+class LineCodec {
+
+    /** Case folding applied to message characters. */
+    enum Case {
+        /** Leave characters as they are. */
+        KEEP,
+        /** Fold to upper case. */
+        UPPER,
+        /** Fold to lower case. */
+        LOWER
+    }
+
+    /** Treatment of message characters not in the alphabet. */
+    enum Invalid {
+        /** Hand them to the machine anyway. */
+        CONVERT,
+        /** Drop them. */
+        SKIP,
+        /** Report an error. */
+        REJECT
+    }
+
+    /** Number of characters in an output group. */
+    static final int GROUP = 5;
+
+    /** Size of the message and output buffers. */
+    static final int BUFFER_SIZE = 1 << 13;
+
+    /** A codec converting with MACHINE and writing to OUT, keeping case
+     *  and converting invalid characters. */
+    LineCodec(Machine machine, Writer out) {
+        this(machine, out, Case.KEEP, Invalid.CONVERT);
+    }
+
+    /** A codec converting with MACHINE and writing to OUT, folding
+     *  case as given by CASEMODE and treating characters outside the
+     *  alphabet as given by INVALID. */
+    LineCodec(Machine machine, Writer out, Case caseMode, Invalid invalid) {
+        this(machine, out, caseMode, invalid, BUFFER_SIZE);
+    }
+
+    /** A codec as for LineCodec(MACHINE, OUT, CASEMODE, INVALID) whose
+     *  buffers hold SIZE > 0 characters, for use on short messages.  If
+     *  MACHINE's alphabet is wide(), a message buffer holds up to SIZE + 1
+     *  characters, so that it never splits a surrogate pair, and twice
+     *  that once converted. */
+    LineCodec(Machine machine, Writer out, Case caseMode, Invalid invalid,
+              int size) {
+        _wide = machine.alphabet().wide();
+        _piece = size;
+        _pending = new char[_wide ? 2 * size + 2 : size];
+        _outBuf = new char[size];
+        _machine = machine;
+        _out = out;
+        _direct = out instanceof MappedWriter;
+        _case = caseMode;
+        _invalid = invalid;
+    }
+
+    /** Add the LEN characters of message text in BUF starting at OFF to
+     *  the current line.  BUF must not contain line terminators, nor end
+     *  in the middle of a surrogate pair. */
+    void write(char[] buf, int off, int len) throws IOException {
+        while (len > 0) {
+            int piece = Math.min(len, _piece);
+            if (_wide && piece < len
+                && Character.isHighSurrogate(buf[off + piece - 1])) {
+                piece += 1;
+            }
+            System.arraycopy(buf, off, _pending, 0, piece);
+            int n = normalize(_pending, 0, piece);
+            n = _machine.convert(_pending, 0, n, _pending, 0);
+            writeConverted(_pending, 0, n);
+            off += piece;
+            len -= piece;
+        }
+    }
+
+    /** Normalize the LEN characters of message text in BUF starting at
+     *  OFF in place, dropping whitespace, folding case and treating
+     *  characters outside the alphabet according to my policies.  Returns
+     *  the number of characters left, which start at OFF.  Does not touch
+     *  my output, so it may run on a different thread from it. */
+    int normalize(char[] buf, int off, int len) {
+        Alphabet alpha = _machine.alphabet();
+        if (_wide) {
+            return normalizeCodePoints(alpha, buf, off, len);
+        }
+        int n = off;
+        for (int i = off; i < off + len; i++) {
+            char ch = buf[i];
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            if (_case == Case.UPPER) {
+                ch = Character.toUpperCase(ch);
+            } else if (_case == Case.LOWER) {
+                ch = Character.toLowerCase(ch);
+            }
+            if (_invalid != Invalid.CONVERT && !alpha.contains(ch)) {
+                if (_invalid == Invalid.REJECT) {
+                    throw error("character %c not in alphabet", ch);
+                }
+                continue;
+            }
+            buf[n++] = ch;
+        }
+        return n - off;
+    }
+
+    /** Normalize BUF[OFF .. OFF+LEN-1] as for normalize(BUF, OFF, LEN),
+     *  one code point at a time, in the wide alphabet ALPHA. */
+    private int normalizeCodePoints(Alphabet alpha, char[] buf, int off,
+                                    int len) {
+        int n = off;
+        for (int i = off; i < off + len; ) {
+            int cp = Character.codePointAt(buf, i, off + len);
+            i += Character.charCount(cp);
+            if (Character.isWhitespace(cp)) {
+                continue;
+            }
+            if (_case == Case.UPPER) {
+                cp = Character.toUpperCase(cp);
+            } else if (_case == Case.LOWER) {
+                cp = Character.toLowerCase(cp);
+            }
+            if (_invalid != Invalid.CONVERT && !alpha.containsCodePoint(cp)) {
+                if (_invalid == Invalid.REJECT) {
+                    throw error("character %s not in alphabet",
+                                new String(Character.toChars(cp)));
+                }
+                continue;
+            }
+            n += Character.toChars(cp, buf, n);
+        }
+        return n - off;
+    }
+
+    /** Add the LEN already converted characters in BUF starting at OFF to
+     *  the current line, continuing its groups.  The second char of a
+     *  surrogate pair belongs to the symbol before it. */
+    void writeConverted(char[] buf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            if (_wide && Character.isLowSurrogate(buf[i])) {
+                put(buf[i]);
+                continue;
+            }
+            if (_column > 0 && _column % GROUP == 0) {
+                put(' ');
+            }
+            put(buf[i]);
+            _column += 1;
+        }
+    }
+
+    /** Finish the current line. */
+    void endLine() throws IOException {
+        for (int i = 0; i < LINE_SEPARATOR.length(); i++) {
+            put(LINE_SEPARATOR.charAt(i));
+        }
+        _column = 0;
+    }
+
+    /** Hand any buffered output to my Writer. */
+    void flush() throws IOException {
+        _out.write(_outBuf, 0, _outLen);
+        _outLen = 0;
+    }
+
+    /** Append CH to the output buffer, writing the buffer when full.  A
+     *  MappedWriter stores CH in its window directly instead. */
+    private void put(char ch) throws IOException {
+        if (_direct) {
+            _out.write(ch);
+            return;
+        }
+        if (_outLen == _outBuf.length) {
+            flush();
+        }
+        _outBuf[_outLen++] = ch;
+    }
+
+    /** Line separator written after each line. */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /** Machine that converts my messages. */
+    private final Machine _machine;
+    /** Destination of converted lines. */
+    private final Writer _out;
+    /** True iff _out is a MappedWriter, which needs no buffer. */
+    private final boolean _direct;
+    /** Case folding. */
+    private final Case _case;
+    /** Treatment of characters outside the alphabet. */
+    private final Invalid _invalid;
+    /** True iff my machine's alphabet is wide(). */
+    private final boolean _wide;
+    /** Most message characters converted at once. */
+    private final int _piece;
+    /** Buffer for message characters being converted. */
+    private final char[] _pending;
+    /** Output not yet handed to _out. */
+    private final char[] _outBuf;
+    /** Number of characters in _outBuf. */
+    private int _outLen;
+    /** Number of message characters on the current output line. */
+    private int _column;
+}
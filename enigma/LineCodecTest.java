@@ -0,0 +1,180 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import ucb.util.CommandArgs;
+import static org.junit.Assert.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/** The suite of all JUnit tests for the LineCodec class.
+ *  @author
+ */
+public class LineCodecTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    private static final String NL = System.lineSeparator();
+
+    /** Return the machine of the "FROM HIS SHOULDER" example. */
+    private Machine machine() {
+        return TestUtils.navalMachine(AZ, "AXLE",
+                                      "(HQ) (EX) (IP) (TR) (BY)");
+    }
+
+    /** Return the output of CODEC's writer OUT after writing each of
+     *  PIECES as one line. */
+    private String lines(LineCodec codec, StringWriter out,
+                         String... pieces) throws IOException {
+        for (String piece : pieces) {
+            codec.write(piece.toCharArray(), 0, piece.length());
+            codec.endLine();
+        }
+        codec.flush();
+        return out.toString();
+    }
+
+    /** A configuration over the alphabet ABCDEF whose fast rotor, M1,
+     *  has its notch at E. */
+    private static final String SMALL_CONFIG =
+        "ABCDEF 4 2\n R1 R (AE) (BF) (CD)\n N1 N (ABC) (DEF)\n"
+        + " M2 MA (ACE) (BDF)\n M1 ME (AFBDC) (E)\n";
+
+    /** Messages for SMALL_CONFIG, set at CBE and plugging A to B. */
+    private static final String SMALL_INPUT =
+        "* R1 N1 M2 M1 CBE (AB)\nABCDEF FEDCBA\nEEEEEEEEEEEE\n\n"
+        + "BADFACE\n";
+
+    /** Return S with B and E replaced by the supplementary code points
+     *  U+1D505 and U+1D508. */
+    private static String wide(String s) {
+        return s.replace("B", new String(Character.toChars(0x1D505)))
+            .replace("E", new String(Character.toChars(0x1D508)));
+    }
+
+    /** Return the output of Main, given OPTIONS, on the configuration
+     *  CONFIG and messages INPUT, all in UTF-8. */
+    private static String main(String config, String input,
+                               String... options) throws IOException {
+        File conf = File.createTempFile("config", null),
+            in = File.createTempFile("input", null),
+            out = File.createTempFile("output", null);
+        conf.deleteOnExit();
+        in.deleteOnExit();
+        out.deleteOnExit();
+        Files.write(conf.toPath(), config.getBytes(UTF_8));
+        Files.write(in.toPath(), input.getBytes(UTF_8));
+        Main main = new Main(Arrays.asList(conf.getPath(), in.getPath(),
+                                           out.getPath()));
+        main.setOptions(new CommandArgs("--pipeline --sections "
+                                        + "--case=(upper|lower)", options));
+        main.process();
+        return new String(Files.readAllBytes(out.toPath()), UTF_8);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testGroups() throws IOException {
+        StringWriter out = new StringWriter();
+        LineCodec codec = new LineCodec(machine(), out);
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW" + NL + NL,
+                     lines(codec, out, "FROM HIS\tSHOULDER HIAWATHA", " "));
+    }
+
+    @Test
+    public void testSplitWrites() throws IOException {
+        StringWriter out = new StringWriter();
+        LineCodec codec = new LineCodec(machine(), out);
+        char[] text = "FROMHISSHOULDERHIAWATHA".toCharArray();
+        codec.write(text, 0, 7);
+        codec.write(text, 7, 16);
+        codec.endLine();
+        codec.flush();
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW" + NL, out.toString());
+    }
+
+    @Test
+    public void testCaseAndSkip() throws IOException {
+        StringWriter out = new StringWriter();
+        LineCodec codec = new LineCodec(machine(), out, LineCodec.Case.UPPER,
+                                        LineCodec.Invalid.SKIP);
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW" + NL,
+                     lines(codec, out, "From his shoulder, Hiawatha!"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testReject() throws IOException {
+        StringWriter out = new StringWriter();
+        LineCodec codec = new LineCodec(machine(), out, LineCodec.Case.KEEP,
+                                        LineCodec.Invalid.REJECT);
+        lines(codec, out, "FROM HIS SHOULDER, HIAWATHA");
+    }
+
+    @Test
+    public void testSupplementaryThroughMain() throws IOException {
+        String plain = main(SMALL_CONFIG, SMALL_INPUT);
+        String settings = SMALL_INPUT.substring(0,
+                                                SMALL_INPUT.indexOf('\n') + 1);
+        for (String[] options : new String[][] {
+                {}, {"--pipeline"}, {"--sections"}, {"--case=upper"} }) {
+            String coded = main(wide(SMALL_CONFIG), wide(SMALL_INPUT),
+                                options);
+            assertEquals(wide(plain), coded);
+            assertEquals(wide(main(SMALL_CONFIG, settings + plain)),
+                         main(wide(SMALL_CONFIG), wide(settings) + coded,
+                              options));
+        }
+        assertEquals("ABCDE FFEDC BA" + NL + "EEEEE EEEEE EE" + NL + NL
+                     + "BADFA CE" + NL,
+                     main(SMALL_CONFIG, settings + plain));
+    }
+
+    @Test
+    public void testSplitLinesKeepsPairs() throws IOException {
+        String text = wide("BEBE\nE");
+        StringReader chars = new StringReader("*\n" + text);
+        Reader oneAtATime = new Reader() {
+            @Override
+            public int read(char[] buf, int off, int len) throws IOException {
+                return chars.read(buf, off, Math.min(len, 1));
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        StringBuilder pieces = new StringBuilder();
+        Main.splitLines(oneAtATime, new MessageSink() {
+            @Override
+            public void settings(String line) {
+            }
+
+            @Override
+            public void text(char[] buf, int off, int len) {
+                assertTrue(len == 0
+                           || !Character.isHighSurrogate(buf[off + len - 1]));
+                pieces.append(buf, off, len);
+            }
+
+            @Override
+            public void endLine() {
+                pieces.append('\n');
+            }
+        });
+        assertEquals(text + "\n", pieces.toString());
+    }
+}
@@ -1,29 +1,69 @@
 package enigma;
 
+import java.nio.CharBuffer;
+
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 
-/** Class that represents a complete enigma machine.
+/** Class that represents a complete enigma machine.  Its fixed parts
+ *  are kept in a MachineSpec and its rotor settings in a MachineCursor;
+ *  a Machine is a mutable front end that rebuilds its spec as rotors are
+ *  inserted and the plugboard set.  Its conversions are counted in
+ *  Metrics.global(), once per buffer converted; conversions of single
+ *  characters are counted here and passed on every REPORT_INTERVAL
+ *  characters and whenever the machine is set up anew.
  *  @author Nathan Mehta
  */
 class Machine {
+
+    /** Most single-character conversions left unreported to Metrics. */
+    static final int REPORT_INTERVAL = LineCodec.BUFFER_SIZE;
+
     /** num rots. */
     private int _numRots;
     /** num pawls. */
     private int _numPawls;
     /** all rotor. */
-    private Object[] _RotArr;
+    private RotorCatalog _catalog;
     /** rotor array. */
     private Rotor[] _rotarr;
     /** plug. */
     private Permutation _plugboard;
+    /** The rotors in _rotarr with _plugboard, once rotors are inserted. */
+    private MachineSpec _spec;
+    /** Single-character conversions not yet reported to Metrics. */
+    private long _unreported;
+    /** Notch events of _cursor when _unreported was last 0. */
+    private long _notchMark;
+    /** Settings of the rotors in _rotarr.  The Rotors' own settings are
+     *  never touched, so machines may share Rotor objects. */
+    private MachineCursor _cursor;
 
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, allRotors, null);
+    }
+
+    /** A machine as for Machine(ALPHA, NUMROTORS, PAWLS, ALLROTORS) that
+     *  converts through cursors made by TRACER, unless TRACER is null. */
+    Machine(Alphabet alpha, int numRotors, int pawls,
+            Collection<Rotor> allRotors, Tracer tracer) {
+        this(alpha, numRotors, pawls, new RotorCatalog(allRotors), tracer);
+    }
+
+    /** A machine as for Machine(ALPHA, NUMROTORS, PAWLS, ALLROTORS,
+     *  TRACER) whose available rotors are those in CATALOG. */
+    Machine(Alphabet alpha, int numRotors, int pawls,
+            RotorCatalog catalog, Tracer tracer) {
+        _tracer = tracer;
         _alphabet = alpha;
         _numRots = numRotors;
         _numPawls = pawls;
-        _RotArr = allRotors.toArray();
+        _catalog = catalog;
         _rotarr = new Rotor[_numRots];
     }
     /** Return the number of rotor slots I have. */
@@ -37,7 +77,10 @@ class Machine {
     }
 
     /** Return Rotor #K, where Rotor #0 is the reflector, and Rotor
-     *  #(numRotors()-1) is the fast Rotor.  Modifying this Rotor has
+     *  #(numRotors()-1) is the fast Rotor.  The Rotor may be shared with
+     *  other machines, and my settings are kept apart from it, so its
+     *  setting() does not follow my rotors' movement: settings()[K] is
+     *  the current setting of slot K.  Modifying this Rotor has
      *  undefined results. */
     Rotor getRotor(int k) {
         return _rotarr[k];
@@ -51,34 +94,40 @@ class Machine {
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
-        for (int i = 0; i < rotors.length; i++) {
-            for (int j = 0; j < _RotArr.length; j++) {
-                if ((((Rotor) _RotArr[j]).name()).equals(rotors[i])) {
-                    _rotarr[i] = ((Rotor) _RotArr[j]);
-                }
-            }
-        }
         if (rotors.length != _rotarr.length) {
             throw new EnigmaException("invalid rotors");
         }
+        for (int i = 0; i < rotors.length; i++) {
+            _rotarr[i] = _catalog.get(rotors[i]);
+            if (_rotarr[i] == null) {
+                throw new EnigmaException("no rotor named " + rotors[i]);
+            }
+        }
         if (_rotarr[(numRotors() - numPawls()) - 1].rotates()) {
             throw new EnigmaException("Moving Rotor in wrong place");
         }
+        report();
+        _spec = new MachineSpec(_rotarr, _plugboard);
+        _cursor = newCursor(new int[numRotors()]);
     }
 
     /** Set my rotors according to SETTING, which must be a string of
-     *  numRotors()-1 characters in my alphabet. The first letter refers
+     *  numRotors()-1 symbols in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-        if (setting.length() != numRotors() - 1) {
+        int[] symbols = setting.codePoints().toArray();
+        if (symbols.length != numRotors() - 1) {
             throw new EnigmaException("incorrect setting string length.");
         }
+        int[] posns = new int[numRotors()];
         for (int i = 1; i < numRotors(); i++) {
-            if (!alphabet().contains(setting.charAt(i - 1))) {
+            if (!alphabet().containsCodePoint(symbols[i - 1])) {
                 throw new EnigmaException(" set. not in alphabet");
             }
-            _rotarr[i].set(setting.charAt(i - 1));
+            posns[i] = alphabet().codePointToInt(symbols[i - 1]);
         }
+        report();
+        _cursor.set(posns);
     }
 
     /** Return the current plugboard's permutation. */
@@ -89,78 +138,201 @@ class Machine {
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
+        if (_spec != null) {
+            report();
+            _spec = new MachineSpec(_rotarr, _plugboard);
+            _cursor = newCursor(_cursor.settings());
+        }
+    }
+
+    /** Return a new cursor on my spec at settings POSNS, tracing if I
+     *  do. */
+    private MachineCursor newCursor(int[] posns) {
+        if (_tracer == null) {
+            return _spec.cursor(posns);
+        }
+        return _tracer.cursor(_spec, posns);
+    }
+
+    /** Return true iff I trace my conversions. */
+    boolean traced() {
+        return _tracer != null;
+    }
+
+    /** Return my spec, which changes when rotors are inserted or the
+     *  plugboard is set.  Cursors on it are independent of my rotors. */
+    MachineSpec spec() {
+        return _spec;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        advanceRotors();
-        if (Main.verbose()) {
-            System.err.printf("[");
-            for (int r = 1; r < numRotors(); r += 1) {
-                System.err.printf("%c",
-                        alphabet().toChar(getRotor(r).setting()));
-            }
-            System.err.printf("] %c -> ", alphabet().toChar(c));
+        if (_unreported == 0) {
+            _notchMark = _cursor.notchEvents();
         }
-        c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(c));
-        }
-        c = applyRotors(c);
-        c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c%n", alphabet().toChar(c));
+        c = _cursor.convert(c);
+        _unreported += 1;
+        if (_unreported == REPORT_INTERVAL) {
+            report();
         }
         return c;
     }
 
-    /** Advance all rotors to their next position. */
-    private void advanceRotors() {
-        boolean[] advance = new boolean[numRotors()];
-        for (int i = 0; i < numRotors(); i++) {
-            if (i == numRotors() - 1) {
-                advance[i] = true;
-            } else if (!_rotarr[i].rotates()) {
-                advance[i] = false;
-            } else if (_rotarr[i + 1].atNotch()) {
-                advance[i] = true;
-                advance[i + 1] = true;
-            }
-        }
-        for (int i = 0; i < numRotors(); i++) {
-            if (advance[i]) {
-                _rotarr[i].advance();
-            }
+    /** Pass the single-character conversions not yet reported on to
+     *  Metrics. */
+    void report() {
+        if (_unreported > 0) {
+            Metrics.global().converted(_unreported,
+                                       _cursor.notchEvents() - _notchMark);
+            _unreported = 0;
         }
     }
 
-    /** Return the result of applying the rotors to the character C (as an
-     *  index in the range 0..alphabet size - 1). */
-    private int applyRotors(int c) {
-        int nConvFor = c;
-        for (int i = _rotarr.length - 1; i >= 0; i -= 1) {
-            nConvFor = _rotarr[i].convertForward(nConvFor);
-        }
-        int nConvBack = nConvFor;
-        for (int i = 1; i < _rotarr.length; i += 1) {
-            nConvBack = _rotarr[i].convertBackward(nConvBack);
-        }
-        return nConvBack;
+    /** Return the current settings of my rotors, indexed by slot. */
+    int[] settings() {
+        return _cursor.settings();
+    }
+
+    /** Advance POSNS, a settings array as returned by settings(), as
+     *  converting a character would advance my rotors were they at
+     *  POSNS. */
+    void step(int[] posns) {
+        _spec.odometer().step(posns);
+    }
+
+    /** Return the settings my rotors will have after N more conversions,
+     *  computed without stepping through them.  My rotors are unchanged. */
+    int[] positionAt(long n) {
+        return _cursor.positionAt(n);
+    }
+
+    /** Move my rotors to where N more conversions would leave them. */
+    void advance(long n) {
+        report();
+        _cursor.advance(n);
+        Metrics.global().advanced(n);
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String encodedMsg = "";
+        char[] chars = msg.toCharArray();
+        char[] result = alphabet().wide() ? new char[2 * chars.length]
+            : chars;
+        int n = convert(chars, 0, chars.length, result, 0);
+        return new String(result, 0, n);
+    }
+
+    /** Convert the LEN characters of SRC starting at OFF into DST starting
+     *  at DSTOFF, updating the state of the rotors accordingly, and return
+     *  the number of characters written.  SRC and DST may be the same
+     *  array.  If my alphabet is wide(), DST must have room for 2 * LEN
+     *  characters (see MachineCursor.convert). */
+    int convert(char[] src, int off, int len, char[] dst, int dstOff) {
+        report();
+        long notches = _cursor.notchEvents();
+        int n = _cursor.convert(src, off, len, dst, dstOff);
+        Metrics.global().converted(len, _cursor.notchEvents() - notches);
+        return n;
+    }
+
+    /** Append the encoding/decoding of MSG to OUT, updating the state of
+     *  the rotors accordingly. */
+    void convert(CharSequence msg, StringBuilder out) {
+        if (alphabet().wide()) {
+            out.append(convert(msg.toString()));
+            return;
+        }
+        out.ensureCapacity(out.length() + msg.length());
+        report();
+        long notches = _cursor.notchEvents();
         for (int i = 0; i < msg.length(); i++) {
-            int converted = convert(alphabet().toInt(msg.charAt(i)));
-            encodedMsg += alphabet().toChar(converted);
+            int c = _cursor.convert(alphabet().toInt(msg.charAt(i)));
+            out.append(alphabet().toChar(c));
         }
-        return encodedMsg;
+        Metrics.global().converted(msg.length(),
+                                   _cursor.notchEvents() - notches);
     }
 
+    /** Convert characters from IN into OUT until IN is exhausted or OUT
+     *  is full, updating the state of the rotors accordingly.  Returns
+     *  the number of characters converted.  My alphabet must not be
+     *  wide(), since a code point converted may not fit in OUT. */
+    int convert(CharBuffer in, CharBuffer out) {
+        if (alphabet().wide()) {
+            throw new EnigmaException("cannot convert a wide alphabet "
+                                      + "between char buffers");
+        }
+        int len = Math.min(in.remaining(), out.remaining());
+        if (in.hasArray() && out.hasArray()) {
+            convert(in.array(), in.arrayOffset() + in.position(), len,
+                    out.array(), out.arrayOffset() + out.position());
+            in.position(in.position() + len);
+            out.position(out.position() + len);
+        } else {
+            report();
+            long notches = _cursor.notchEvents();
+            for (int i = 0; i < len; i++) {
+                int c = _cursor.convert(alphabet().toInt(in.get()));
+                out.put(alphabet().toChar(c));
+            }
+            Metrics.global().converted(len, _cursor.notchEvents() - notches);
+        }
+        return len;
+    }
+
+    /** Returns the encoding/decoding of MSG, as convert(MSG) would,
+     *  converting chunks of it in parallel on the common fork/join pool.
+     *  Leaves the rotors where convert(MSG) would. */
+    String convertParallel(String msg) {
+        return convertParallel(msg, ForkJoinPool.commonPool());
+    }
+
+    /** Returns the encoding/decoding of MSG, as convert(MSG) would,
+     *  converting chunks of it in parallel on POOL.  Each chunk starts
+     *  from the settings reached by jumping ahead to its first character,
+     *  on a cursor of its own.  Leaves the rotors where convert(MSG)
+     *  would, and is counted in Metrics as convert(MSG) would be.  MSG is
+     *  converted as a whole if I trace or my alphabet is wide(). */
+    String convertParallel(String msg, ForkJoinPool pool) {
+        int chunk = Math.max(MIN_CHUNK,
+                             msg.length() / (4 * pool.getParallelism()) + 1);
+        if (traced() || alphabet().wide() || msg.length() <= chunk) {
+            return convert(msg);
+        }
+        char[] result = new char[msg.length()];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int start = 0; start < msg.length(); start += chunk) {
+            int from = start, to = Math.min(msg.length(), start + chunk);
+            tasks.add(pool.submit(() -> convertChunk(msg, from, to, result)));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        report();
+        _cursor.advance(msg.length());
+        return new String(result);
+    }
+
+    /** Convert MSG[FROM .. TO-1] into RESULT[FROM .. TO-1], starting from
+     *  the settings FROM conversions ahead of my current ones.  Uses a
+     *  cursor of its own, so my rotors are not touched. */
+    private void convertChunk(String msg, int from, int to, char[] result) {
+        MachineCursor cursor = _spec.cursor(positionAt(from));
+        for (int i = from; i < to; i++) {
+            int c = cursor.convert(alphabet().toInt(msg.charAt(i)));
+            result[i] = alphabet().toChar(c);
+        }
+        Metrics.global().converted(to - from, cursor.notchEvents());
+    }
+
+    /** Smallest number of characters convertParallel gives a task. */
+    static final int MIN_CHUNK = 1 << 16;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
+    /** Makes my cursors if I trace, or null if I do not. */
+    private final Tracer _tracer;
 }
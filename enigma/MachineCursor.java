@@ -0,0 +1,136 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** The rotor settings of one session on a MachineSpec, and the means to
+ *  convert with them.  A cursor holds only its settings and a cache of
+ *  composite rotor tables derived from them; everything else belongs to
+ *  its spec.  A cursor is not itself safe to share among threads, but
+ *  cursors on the same spec are independent.
+ *  @author Nathan Mehta
+ */
+class MachineCursor {
+
+    /** A cursor on SPEC with rotor settings POSNS, indexed by slot. */
+    MachineCursor(MachineSpec spec, int[] posns) {
+        _spec = spec;
+        _posns = posns.clone();
+        _stack = new RotorStack(slots(spec), _posns);
+    }
+
+    /** Return my spec. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Return the setting of the rotor in slot K. */
+    int setting(int k) {
+        return _posns[k];
+    }
+
+    /** Return my rotor settings, indexed by slot. */
+    int[] settings() {
+        return _posns.clone();
+    }
+
+    /** Set my rotor settings to POSNS, indexed by slot. */
+    void set(int[] posns) {
+        System.arraycopy(posns, 0, _posns, 0, _posns.length);
+        _stack.reset();
+    }
+
+    /** Advance my rotors one step. */
+    void step() {
+        int moved = _spec.odometer().step(_posns);
+        if (moved < _posns.length - 1) {
+            _notchEvents += 1;
+        }
+        _stack.movedFrom(moved);
+    }
+
+    /** Return the number of steps I have taken that moved a rotor other
+     *  than the fast one.  Jumps made by advance are not counted. */
+    long notchEvents() {
+        return _notchEvents;
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  my rotors. */
+    int convert(int c) {
+        step();
+        Permutation plug = _spec.plugboard();
+        return plug.permute(_stack.apply(plug.permute(c)));
+    }
+
+    /** Convert the LEN characters of SRC starting at OFF into DST starting
+     *  at DSTOFF, advancing my rotors accordingly, and return the number
+     *  of characters written.  SRC and DST may be the same array.  Where
+     *  my alphabet is wide(), the text is converted by code point, so a
+     *  symbol of one char may become one of two: DST must then have room
+     *  for 2 * LEN characters, and SRC must not end in the middle of a
+     *  surrogate pair. */
+    int convert(char[] src, int off, int len, char[] dst, int dstOff) {
+        Alphabet alpha = _spec.alphabet();
+        if (alpha.wide()) {
+            return convertCodePoints(src, off, len, dst, dstOff);
+        }
+        for (int i = 0; i < len; i++) {
+            int c = convert(alpha.toInt(src[off + i]));
+            dst[dstOff + i] = alpha.toChar(c);
+        }
+        return len;
+    }
+
+    /** Convert as for convert(SRC, OFF, LEN, DST, DSTOFF) in a wide
+     *  alphabet, one code point at a time.  The input is first copied
+     *  if DST is SRC, since the output may outgrow it. */
+    private int convertCodePoints(char[] src, int off, int len,
+                                  char[] dst, int dstOff) {
+        Alphabet alpha = _spec.alphabet();
+        if (src == dst) {
+            src = Arrays.copyOfRange(src, off, off + len);
+            off = 0;
+        }
+        int n = dstOff;
+        for (int i = off; i < off + len; ) {
+            int cp = Character.codePointAt(src, i, off + len);
+            i += Character.charCount(cp);
+            int c = convert(alpha.codePointToInt(cp));
+            n += Character.toChars(alpha.toCodePoint(c), dst, n);
+        }
+        return n - dstOff;
+    }
+
+    /** Return the settings my rotors will have after N more conversions,
+     *  computed without stepping through them.  My rotors are unchanged. */
+    int[] positionAt(long n) {
+        int[] posns = settings();
+        _spec.odometer().advance(posns, n);
+        return posns;
+    }
+
+    /** Move my rotors to where N more conversions would leave them. */
+    void advance(long n) {
+        _spec.odometer().advance(_posns, n);
+        _stack.reset();
+    }
+
+    /** Return the rotors of SPEC in slot order. */
+    private static Rotor[] slots(MachineSpec spec) {
+        Rotor[] slots = new Rotor[spec.numRotors()];
+        for (int k = 0; k < slots.length; k += 1) {
+            slots[k] = spec.rotor(k);
+        }
+        return slots;
+    }
+
+    /** The machine I am a session on. */
+    private final MachineSpec _spec;
+    /** Rotor settings, indexed by slot. */
+    private final int[] _posns;
+    /** Composite of the rotors of _spec at _posns. */
+    private final RotorStack _stack;
+    /** Number of steps taken that moved more than the fast rotor. */
+    private long _notchEvents;
+}
@@ -0,0 +1,70 @@
+package enigma;
+
+/** The fixed part of a machine that has been set up for use: its
+ *  alphabet, the rotors in its slots, its stepping mechanism and its
+ *  plugboard.  A MachineSpec never changes, so it is safe to share among
+ *  threads; the rotor settings of each session live in a MachineCursor
+ *  of its own, and any number of cursors may use one spec at once.
+ *  @author Nathan Mehta
+ */
+class MachineSpec {
+
+    /** A spec for a machine whose slots hold SLOTS (SLOTS[0] is the
+     *  reflector and SLOTS[SLOTS.length - 1] the fast rotor) and whose
+     *  plugboard is PLUGBOARD, or the identity if PLUGBOARD is null.
+     *  Only the permutations and notches of SLOTS are used, never their
+     *  settings. */
+    MachineSpec(Rotor[] slots, Permutation plugboard) {
+        _slots = slots.clone();
+        _alphabet = slots[0].alphabet();
+        _plugboard = plugboard != null ? plugboard
+            : new Permutation("", _alphabet);
+        _odometer = new Odometer(_slots);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots I have. */
+    int numRotors() {
+        return _slots.length;
+    }
+
+    /** Return the rotor in slot K, where slot 0 holds the reflector.
+     *  Its setting is not used. */
+    Rotor rotor(int k) {
+        return _slots[k];
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Return my stepping mechanism. */
+    Odometer odometer() {
+        return _odometer;
+    }
+
+    /** Return a new cursor on me with all rotors at setting 0. */
+    MachineCursor cursor() {
+        return new MachineCursor(this, new int[numRotors()]);
+    }
+
+    /** Return a new cursor on me with rotor settings POSNS, indexed by
+     *  slot. */
+    MachineCursor cursor(int[] posns) {
+        return new MachineCursor(this, posns);
+    }
+
+    /** Rotors in slot order, reflector first. */
+    private final Rotor[] _slots;
+    /** Common alphabet of my rotors. */
+    private final Alphabet _alphabet;
+    /** The plugboard. */
+    private final Permutation _plugboard;
+    /** Stepping mechanism of _slots. */
+    private final Odometer _odometer;
+}
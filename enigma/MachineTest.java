@@ -1,6 +1,13 @@
 package enigma;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -19,24 +26,8 @@ public class MachineTest {
 
     private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
 
-    private static final HashMap<String, Rotor> ROTORS = new HashMap<>();
-
-    static {
-        HashMap<String, String> nav = TestUtils.NAVALA;
-        ROTORS.put("B", new Reflector("B", new Permutation(nav.get("B"), AZ)));
-        ROTORS.put("Beta",
-                new FixedRotor("Beta",
-                        new Permutation(nav.get("Beta"), AZ)));
-        ROTORS.put("III",
-                new MovingRotor("III",
-                        new Permutation(nav.get("III"), AZ), "V"));
-        ROTORS.put("IV",
-                new MovingRotor("IV", new Permutation(nav.get("IV"), AZ),
-                        "J"));
-        ROTORS.put("I",
-                new MovingRotor("I", new Permutation(nav.get("I"), AZ),
-                        "Q"));
-    }
+    private static final HashMap<String, Rotor> ROTORS =
+        TestUtils.navalRotors(AZ);
 
     private static final String[] ROTORS1 = { "B", "Beta", "III", "IV", "I" };
     private static final String SETTING1 = "AXLE";
@@ -76,4 +67,195 @@ public class MachineTest {
         assertEquals("QVPQSOKOILPUBKJZPISFXDW",
                 mach.convert("FROMHISSHOULDERHIAWATHA"));
     }
+
+    @Test
+    public void testCompositeMatchesRotors() {
+        Machine mach = new Machine(AZ, 7, 5, ROTORS.values());
+        mach.insertRotors(new String[] { "B", "Beta", "V", "II", "III",
+                                         "IV", "I" });
+        mach.setRotors("AZDUVP");
+        Permutation plug = new Permutation("(AQ) (MZ) (CD)", AZ);
+        mach.setPlugboard(plug);
+        for (int i = 0; i < 3000; i += 1) {
+            int c = (i * 7) % 26;
+            int result = mach.convert(c);
+            int[] posns = mach.settings();
+            int expected = plug.permute(c);
+            for (int r = 6; r >= 0; r -= 1) {
+                expected = mach.getRotor(r).convertForward(expected,
+                                                           posns[r]);
+            }
+            for (int r = 1; r < 7; r += 1) {
+                expected = mach.getRotor(r).convertBackward(expected,
+                                                            posns[r]);
+            }
+            assertEquals(plug.permute(expected), result);
+        }
+    }
+
+    @Test
+    public void testAdvance() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        mach.advance(4);
+        assertEquals("SOKOILPUBKJZPISFXDW",
+                mach.convert("HISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testPositionAtMatchesStepping() {
+        Random rand = new Random(61);
+        String[] notches = { "Q", "E", "AN", "MZ", "ACEGIKMOQSUWY", "",
+                             "AB", "Z" };
+        for (int trial = 0; trial < 200; trial += 1) {
+            int numRotors = 3 + rand.nextInt(4);
+            int pawls = 1 + rand.nextInt(numRotors - 1);
+            ArrayList<Rotor> all = new ArrayList<>();
+            String[] names = new String[numRotors];
+            names[0] = "B";
+            all.add(ROTORS.get("B"));
+            for (int r = 1; r < numRotors; r += 1) {
+                names[r] = "R" + r;
+                Permutation perm =
+                    new Permutation(TestUtils.NAVALA.get("I"), AZ);
+                if (r >= numRotors - pawls) {
+                    all.add(new MovingRotor(names[r], perm,
+                        notches[rand.nextInt(notches.length)]));
+                } else {
+                    all.add(new FixedRotor(names[r], perm));
+                }
+            }
+            Machine mach = new Machine(AZ, numRotors, pawls, all);
+            mach.insertRotors(names);
+            char[] setting = new char[numRotors - 1];
+            for (int r = 0; r < setting.length; r += 1) {
+                setting[r] = AZ.toChar(rand.nextInt(26));
+            }
+            mach.setRotors(new String(setting));
+            int steps = rand.nextInt(3000);
+            int[] posns = mach.settings();
+            for (int k = 0; k < steps; k += 1) {
+                mach.step(posns);
+            }
+            assertEquals(Arrays.toString(posns),
+                         Arrays.toString(mach.positionAt(steps)));
+        }
+    }
+
+    @Test
+    public void testConvertParallel() {
+        StringBuilder msg = new StringBuilder();
+        Random rand = new Random(5);
+        for (int i = 0; i < 300000; i += 1) {
+            msg.append(AZ.toChar(rand.nextInt(26)));
+        }
+        Machine seq = mach1(), par = mach1();
+        seq.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        par.setPlugboard(seq.plugboard());
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < msg.length(); i += 1) {
+            expected.append(AZ.toChar(seq.convert(AZ.toInt(msg.charAt(i)))));
+        }
+        int[] expectedPosns = seq.settings();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        assertEquals(expected.toString(),
+                     par.convertParallel(msg.toString(), pool));
+        assertEquals(Arrays.toString(expectedPosns),
+                     Arrays.toString(par.settings()));
+        pool.shutdown();
+    }
+
+    @Test
+    public void testConvertBulk() {
+        String plug = "(HQ) (EX) (IP) (TR) (BY)";
+        String expected = "QVPQSOKOILPUBKJZPISFXDW";
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation(plug, AZ));
+        char[] src = "..FROMHISSHOULDERHIAWATHA".toCharArray();
+        char[] dst = new char[26];
+        mach.convert(src, 2, 23, dst, 3);
+        assertEquals(expected, new String(dst, 3, 23));
+
+        mach = mach1();
+        mach.setPlugboard(new Permutation(plug, AZ));
+        CharBuffer in = CharBuffer.wrap("FROMHISSHOULDERHIAWATHA");
+        CharBuffer out = CharBuffer.allocate(10);
+        assertEquals(10, mach.convert(in, out));
+        out.flip();
+        CharBuffer rest = CharBuffer.allocate(20);
+        assertEquals(13, mach.convert(in, rest));
+        rest.flip();
+        assertEquals(expected, out.toString() + rest.toString());
+
+        mach = mach1();
+        mach.setPlugboard(new Permutation(plug, AZ));
+        StringBuilder sb = new StringBuilder("> ");
+        mach.convert((CharSequence) "FROMHISSHOULDERHIAWATHA", sb);
+        assertEquals("> " + expected, sb.toString());
+    }
+
+    @Test
+    public void testMachinesShareRotors() {
+        Machine mach = mach1();
+        Machine other = new Machine(AZ, 5, 3, ROTORS.values());
+        other.insertRotors(new String[] { "B", "Beta", "I", "III", "IV" });
+        other.setRotors("QQQQ");
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        other.setPlugboard(new Permutation("", AZ));
+        StringBuilder result = new StringBuilder();
+        for (char ch : "FROMHISSHOULDERHIAWATHA".toCharArray()) {
+            result.append(AZ.toChar(mach.convert(AZ.toInt(ch))));
+            other.convert(AZ.toInt(ch));
+        }
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", result.toString());
+    }
+
+    @Test
+    public void testCursorsShareSpec() throws InterruptedException {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        MachineSpec spec = mach.spec();
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        String[] results = new String[8];
+        Thread[] threads = new Thread[results.length];
+        for (int t = 0; t < threads.length; t += 1) {
+            int k = t;
+            threads[t] = new Thread(() -> {
+                MachineCursor cursor = spec.cursor(mach.settings());
+                char[] chars = msg.toCharArray();
+                for (int i = 0; i < 500; i += 1) {
+                    cursor.set(mach.settings());
+                    cursor.convert(msg.toCharArray(), 0, msg.length(),
+                                   chars, 0);
+                }
+                results[k] = new String(chars);
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (String result : results) {
+            assertEquals("QVPQSOKOILPUBKJZPISFXDW", result);
+        }
+        assertArrayEquals(new int[] { 0, 0, 23, 11, 4 }, mach.settings());
+    }
+
+    @Test
+    public void testTrace() {
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(trace);
+        Machine mach = new Machine(AZ, 5, 3, ROTORS.values(),
+            (spec, posns) -> new TracingCursor(spec, posns, out));
+        mach.insertRotors(ROTORS1);
+        mach.setRotors(SETTING1);
+        mach.setPlugboard(new Permutation("(YF) (ZH)", AZ));
+        assertTrue(mach.traced());
+        assertEquals("SS", mach.convert("HY"));
+        String nl = System.lineSeparator();
+        assertEquals("[AXLF] H -> Z -> G -> U -> Z -> S -> Z -> T -> B "
+                     + "-> M -> S -> S" + nl
+                     + "[AXLG] Y -> F -> N -> L -> U -> G -> Y -> C -> P "
+                     + "-> W -> S -> S" + nl, trace.toString());
+    }
 }
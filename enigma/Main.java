@@ -1,24 +1,28 @@
 package enigma;
 
-import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
 
 import ucb.util.CommandArgs;
 
 import static enigma.EnigmaException.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /** Enigma simulator.
  *  @author Nathan Mehta
  */
 public final class Main {
-    /** all rotors array. */
-    private ArrayList<Rotor> allRotors;
+    /** all rotors catalog. */
+    private RotorCatalog allRotors;
 
     /** Process a sequence of encryptions and decryptions, as
      *  specified by ARGS, where 1 <= ARGS.length <= 3.
@@ -27,22 +31,98 @@ public final class Main {
      *  containing messages.  Otherwise, input comes from the standard
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
-     *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  standard output.  Files are read and written as UTF-8, except
+     *  that with --mmap messages are in ISO-8859-1.  Exits normally if
+     *  there are no errors in the input; otherwise with code 1.  With
+     *  --metrics, the totals of Metrics are visible over JMX during the
+     *  run and summarized on the standard error at its end.  With
+     *  --serve=ADDRESS, ARGS instead name configuration files or
+     *  directories of them, and requests for conversions are served on
+     *  ADDRESS until the process is killed (see Server).  With
+     *  --compile-config, ARGS name a configuration file and a file to
+     *  which to write it in the binary form that loads faster (see
+     *  CompiledConfig); either form may be used as a configuration
+     *  file. */
     public static void main(String... args) {
+        boolean metrics = false;
         try {
             CommandArgs options =
-                new CommandArgs("--verbose --=(.*){1,3}", args);
-            if (!options.ok()) {
-                throw error("Usage: java enigma.Main [--verbose] "
-                            + "[INPUT [OUTPUT]]");
+                new CommandArgs("--verbose --mmap --pipeline --sections "
+                                + "--batch --metrics --trace=(.+) "
+                                + "--serve=(.+) --compile-config "
+                                + "--case=(upper|lower) "
+                                + "--invalid=(skip|reject) --=(.*){1,3}",
+                                args);
+            if (!options.ok()
+                || options.contains("--batch")
+                   && (options.get("--").size() > 2
+                       || options.contains("--trace")
+                       || options.contains("--verbose")
+                       || options.contains("--serve"))
+                || options.contains("--serve")
+                   && (options.contains("--trace")
+                       || options.contains("--verbose"))
+                || options.contains("--verbose")
+                   && options.contains("--trace")
+                || options.contains("--sections")
+                   && options.contains("--pipeline")
+                || options.contains("--compile-config")
+                   && (options.get("--").size() != 2
+                       || options.contains("--batch")
+                       || options.contains("--serve"))) {
+                throw error("Usage: java enigma.Main [--verbose] [--mmap] "
+                            + "[--pipeline | --sections] [--metrics] "
+                            + "[--case=upper|lower] "
+                            + "[--invalid=skip|reject] "
+                            + "[--trace=TRACEFILE] "
+                            + "CONFIG [INPUT [OUTPUT]]%n"
+                            + "   or: java enigma.Main --batch [OPTIONS] "
+                            + "MANIFEST|DIR [OUTDIR]%n"
+                            + "   or: java enigma.Main --serve=PORT|SOCKET "
+                            + "[OPTIONS] CONFIG|DIR...%n"
+                            + "   or: java enigma.Main --compile-config "
+                            + "CONFIG OUTPUT");
             }
 
             _verbose = options.contains("--verbose");
-            new Main(options.get("--")).process();
-            return;
+            metrics = options.contains("--metrics");
+            if (metrics || Metrics.managed()) {
+                Metrics.global().register();
+            }
+            if (options.contains("--compile-config")) {
+                CompiledConfig.compile(options.get("--").get(0),
+                                       options.get("--").get(1));
+                return;
+            } else if (options.contains("--batch")) {
+                Batch batch = new Batch(Batch.jobs(options.get("--")),
+                                        options.contains("--mmap"),
+                                        main -> main.setOptions(options));
+                if (batch.run(System.out)) {
+                    return;
+                }
+            } else if (options.contains("--serve")) {
+                Server server = new Server(
+                    Server.configs(options.get("--"),
+                                   main -> main.setOptions(options)),
+                    options.getFirst("--serve"));
+                Runtime.getRuntime().addShutdownHook(
+                    new Thread(server::close));
+                System.err.printf("serving on %s%n", server.localAddress());
+                server.run();
+                return;
+            } else {
+                Main main = new Main(options.get("--"),
+                                     options.contains("--mmap"));
+                main.setOptions(options);
+                main.process();
+                return;
+            }
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
+        } finally {
+            if (metrics) {
+                Metrics.global().summary(System.err);
+            }
         }
         System.exit(1);
     }
@@ -50,96 +130,285 @@ public final class Main {
     /** Open the necessary files for non-option arguments ARGS (see comment
       *  on main). */
     Main(List<String> args) {
-        _config = getInput(args.get(0));
+        this(args, false);
+    }
+
+    /** Open the necessary files for non-option arguments ARGS (see comment
+      *  on main), memory-mapping the input and output files if MMAP. */
+    Main(List<String> args, boolean mmap) {
+        _configName = args.get(0);
+        _config = getInput(_configName);
+        open(args.subList(1, args.size()), mmap);
+    }
+
+    /** Read the configuration file named CONFIG, for use by other Mains
+     *  (see Main(Main, List, boolean)). */
+    Main(String config) {
+        _configName = config;
+        _config = getInput(config);
+        readConfig();
+    }
 
-        if (args.size() > 1) {
-            _input = getInput(args.get(1));
+    /** A Main applying the configuration already read by CONFIG to the
+     *  messages in the files named by FILES (an optional input file
+     *  and an optional output file, as in ARGS for main), memory-mapping
+     *  them if MMAP.  Any number of such Mains may share CONFIG and run
+     *  at once. */
+    Main(Main config, List<String> files, boolean mmap) {
+        _alphabet = config._alphabet;
+        allRotors = config.allRotors;
+        _numRotors = config._numRotors;
+        _numPawls = config._numPawls;
+        open(files, mmap);
+    }
+
+    /** Open my input and output for FILES (an optional input file and an
+     *  optional output file), memory-mapping them if MMAP. */
+    private void open(List<String> files, boolean mmap) {
+        if (files.size() > 0) {
+            _input = mmap ? getMapped(files.get(0))
+                : getReader(files.get(0));
+            _closeInput = true;
+        } else if (mmap) {
+            throw error("--mmap requires an input file");
         } else {
-            _input = new Scanner(System.in);
+            _input = new InputStreamReader(
+                Metrics.global().countIn(System.in), UTF_8);
         }
 
-        if (args.size() > 2) {
-            _output = getOutput(args.get(2));
+        if (files.size() > 1) {
+            try {
+                _output = mmap ? getMappedOutput(files.get(1))
+                    : getOutput(files.get(1));
+            } catch (EnigmaException excp) {
+                close(_input);
+                throw excp;
+            }
+            _closeOutput = true;
         } else {
-            _output = System.out;
+            _output = new OutputStreamWriter(
+                Metrics.global().countOut(System.out), UTF_8);
+        }
+    }
+
+    /** Set my message-processing options (--pipeline, --sections, --case,
+     *  --invalid and --trace) from OPTIONS. */
+    void setOptions(CommandArgs options) {
+        if (options.contains("--trace")) {
+            _traceFile = options.getFirst("--trace");
+        }
+        _pipeline = options.contains("--pipeline");
+        _sections = options.contains("--sections");
+        if (options.contains("--case")) {
+            _case = LineCodec.Case.valueOf(
+                options.getFirst("--case").toUpperCase());
+        }
+        if (options.contains("--invalid")) {
+            _invalid = LineCodec.Invalid.valueOf(
+                options.getFirst("--invalid").toUpperCase());
+        }
+    }
+
+    /** Close INPUT, ignoring errors. */
+    private static void close(Reader input) {
+        try {
+            input.close();
+        } catch (IOException excp) {
+            return;
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Return the contents of the file named NAME. */
+    private byte[] getInput(String name) {
         try {
-            return new Scanner(new File(name));
+            return Files.readAllBytes(Paths.get(name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a Reader reading from the file named NAME. */
+    private Reader getReader(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new InputStreamReader(
+                Metrics.global().countIn(new FileInputStream(name)), UTF_8);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Configure an Enigma machine from the contents of configuration
-     *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        printMessageLine("");
+    /** Return a Writer writing to the file named NAME. */
+    private Writer getOutput(String name) {
+        try {
+            return new OutputStreamWriter(
+                Metrics.global().countOut(new FileOutputStream(name)),
+                UTF_8);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Return a memory-mapped Reader for the file named NAME. */
+    private Reader getMapped(String name) {
         try {
-            String alphT = _config.next();
-            if (alphT.contains("(")
-                    || alphT.contains(")") || alphT.contains("*")) {
-                throw new EnigmaException("invalid alphabet");
-            }
-            _alphabet = new Alphabet(alphT);
-            int numRots = _config.nextInt();
-            int numPawls = _config.nextInt();
-            allRotors = new ArrayList<>();
-            while (_config.hasNext()) {
-                allRotors.add(readRotor());
-            }
-            return new Machine(_alphabet, numRots, numPawls, allRotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+            return new MappedReader(name);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
+    /** Return a memory-mapped Writer for the file named NAME. */
+    private Writer getMappedOutput(String name) {
         try {
-            String rotCycs = " ";
-            String rotorName = _config.next();
-            String rotorType = _config.next();
-            while (_config.hasNext("\\(.*\\)")) {
-                rotCycs += _config.next();
-                rotCycs += " ";
+            return new MappedWriter(name);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Configure an Enigma machine from the contents of configuration
+     *  file _config (unless already read) and apply it to the messages in
+     *  _input, sending the results to _output.  Closes the files I
+     *  opened. */
+    void process() {
+        if (allRotors == null) {
+            readConfig();
+        }
+        TraceRecorder recorder = null;
+        if (verbose()) {
+            _tracer = (spec, posns) ->
+                new TracingCursor(spec, posns, System.err);
+        } else if (_traceFile != null) {
+            try {
+                recorder = new TraceRecorder(_traceFile, _alphabet,
+                                             _numRotors);
+            } catch (IOException excp) {
+                throw error("could not open %s", _traceFile);
             }
-            Permutation rotPerm = new Permutation(rotCycs, _alphabet);
-            if (rotorType.charAt(0) == 'M') {
-                String rotNotches = "";
-                for (int i = 1; i < rotorType.length(); i++) {
-                    rotNotches += rotorType.charAt(i);
+            _tracer = recorder;
+        }
+        Machine machine = newMachine();
+        LineCodec codec = new LineCodec(machine, _output, _case, _invalid);
+        try {
+            try {
+                if (_sections && _tracer == null) {
+                    new Sections(_input, line -> {
+                        Machine section = newMachine();
+                        setUp(section, line);
+                        return section;
+                    }, _case, _invalid).run(_output);
+                } else if (_pipeline) {
+                    new Pipeline(_input, machine, codec, line -> {
+                        nextSection();
+                        setUp(machine, line);
+                    }).run();
+                } else {
+                    long mark = Metrics.global().allocationMark();
+                    splitLines(_input, new MessageSink() {
+                        @Override
+                        public void settings(String line) {
+                            nextSection();
+                            setUp(machine, line);
+                        }
+
+                        @Override
+                        public void text(char[] buf, int off, int len)
+                            throws IOException {
+                            codec.write(buf, off, len);
+                        }
+
+                        @Override
+                        public void endLine() throws IOException {
+                            codec.endLine();
+                        }
+                    });
+                    Metrics.global().allocated(mark);
+                }
+            } finally {
+                if (_sectionStart != 0) {
+                    Metrics.global().section(System.nanoTime()
+                                             - _sectionStart);
+                }
+                if (_closeInput) {
+                    close(_input);
+                }
+                if (recorder != null) {
+                    recorder.close();
+                }
+                codec.flush();
+                if (_closeOutput) {
+                    _output.close();
+                } else {
+                    _output.flush();
                 }
-                return new MovingRotor(rotorName, rotPerm, rotNotches);
-            } else if (rotorType.charAt(0) == 'N') {
-                return new FixedRotor(rotorName, rotPerm);
-            } else if (rotorType.charAt(0) == 'R') {
-                return new Reflector(rotorName, rotPerm);
-            } else {
-                throw new EnigmaException("rotor invalid");
             }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Convert the settings lines and message lines read from INPUT as
+     *  process() would, but on a new, untraced machine of my
+     *  configuration, writing the results to OUT through buffers of SIZE
+     *  characters.  Any number of threads may call this at once. */
+    void convert(Reader input, Writer out, int size) throws IOException {
+        Machine machine = new Machine(_alphabet, _numRotors, _numPawls,
+                                      allRotors, null);
+        LineCodec codec = new LineCodec(machine, out, _case, _invalid, size);
+        try {
+            splitLines(input, new MessageSink() {
+                @Override
+                public void settings(String line) {
+                    setUp(machine, line);
+                }
+
+                @Override
+                public void text(char[] buf, int off, int len)
+                    throws IOException {
+                    codec.write(buf, off, len);
+                }
+
+                @Override
+                public void endLine() throws IOException {
+                    codec.endLine();
+                }
+            });
+        } finally {
+            codec.flush();
+        }
+    }
 
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+    /** Record the end of the current section of messages, if any, in
+     *  Metrics, and start timing the next. */
+    private void nextSection() {
+        long now = System.nanoTime();
+        if (_sectionStart != 0) {
+            Metrics.global().section(now - _sectionStart);
         }
+        _sectionStart = now;
+    }
+
+    /** Return an Enigma machine configured from the contents of configuration
+     *  file _config, in either form, recording the configuration for
+     *  newMachine. */
+    private Machine readConfig() {
+        long start = System.nanoTime();
+        CompiledConfig config = CompiledConfig.read(_configName, _config);
+        _alphabet = config.alphabet();
+        _numRotors = config.numRotors();
+        _numPawls = config.numPawls();
+        allRotors = config.rotors();
+        _config = null;
+        Metrics.global().configParsed(System.nanoTime() - start);
+        return newMachine();
+    }
+
+    /** Return a new machine with the configuration read by readConfig,
+     *  converting through cursors made by _tracer, if any.  Machines
+     *  share the rotors of the configuration, but not their settings. */
+    private Machine newMachine() {
+        return new Machine(_alphabet, _numRotors, _numPawls, allRotors,
+                           _tracer);
     }
 
     /** Set M according to the specification given on SETTINGS,
@@ -150,13 +419,9 @@ public final class Main {
         if (!inputSettings[0].equals("*")) {
             throw new EnigmaException("invalid input settings line");
         }
-        for (int i = 0; i < allRotors.size(); i++) {
-            if (allRotors.get(i).reflecting()) {
-                if (allRotors.get(i).name().equals(inputSettings[1])) {
-                    isReflector = true;
-                    break;
-                }
-            }
+        if (inputSettings.length > 1) {
+            Rotor reflector = allRotors.get(inputSettings[1]);
+            isReflector = reflector != null && reflector.reflecting();
         }
         if (M.numRotors() + 2 > inputSettings.length) {
             throw new EnigmaException("invalid length machine");
@@ -189,40 +454,138 @@ public final class Main {
         return _verbose;
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        String setting = _input.nextLine();
-        Machine machine = readConfig();
-        setUp(machine, setting);
-        while (_input.hasNextLine()) {
-            String inputNxtLine = _input.nextLine();
-            if (inputNxtLine.contains("*")) {
-                setUp(machine, inputNxtLine);
+    /** Read INPUT in chunks, passing each settings line and the text of
+     *  each message line to SINK.  A line is a settings line if it starts
+     *  with '*', and the first line must be one.  Message lines are never
+     *  held in memory whole, so memory use does not grow with their
+     *  length.  No piece of text passed to SINK ends in the middle of a
+     *  surrogate pair: a high surrogate that ends what INPUT returns is
+     *  held back until the next read. */
+    static void splitLines(Reader input, MessageSink sink)
+        throws IOException {
+        char[] in = new char[LineCodec.BUFFER_SIZE];
+        StringBuilder settings = new StringBuilder();
+        boolean lineStart = true, inSettings = false, afterCR = false;
+        boolean seenSettings = false;
+        int carry = 0;
+        while (true) {
+            int n = input.read(in, carry, in.length - carry);
+            if (n == -1 && carry == 0) {
+                break;
+            } else if (n == -1) {
+                n = carry;
+                carry = 0;
             } else {
-                msg = machine.convert(inputNxtLine.replaceAll(" ", ""));
-                String printedMsg = "";
-                while (msg.length() >= 6) {
-                    printedMsg += msg.substring(0, 5) + " ";
-                    msg = msg.substring(5);
+                n += carry;
+                carry = Character.isHighSurrogate(in[n - 1]) ? 1 : 0;
+                n -= carry;
+            }
+            int i = 0;
+            if (afterCR && in[0] == '\n') {
+                i = 1;
+            }
+            afterCR = false;
+            while (i < n) {
+                if (lineStart && (in[i] == '*' || !seenSettings)) {
+                    inSettings = true;
+                }
+                int end = i;
+                while (end < n && in[end] != '\n' && in[end] != '\r'
+                       && (inSettings || in[end] != '*')) {
+                    end += 1;
+                }
+                if (inSettings) {
+                    settings.append(in, i, end - i);
+                } else {
+                    sink.text(in, i, end - i);
                 }
-                printedMsg += msg;
-                _output.println(printedMsg);
+                lineStart = lineStart && end == i;
+                if (end == n) {
+                    break;
+                } else if (in[end] == '*') {
+                    throw error("invalid input settings line");
+                }
+                if (inSettings) {
+                    sink.settings(settings.toString());
+                    settings.setLength(0);
+                    seenSettings = true;
+                } else {
+                    sink.endLine();
+                }
+                inSettings = false;
+                lineStart = true;
+                i = end + 1;
+                if (in[end] == '\r') {
+                    if (i == n) {
+                        afterCR = true;
+                    } else if (in[i] == '\n') {
+                        i += 1;
+                    }
+                }
+            }
+            if (carry == 1) {
+                in[0] = in[n];
             }
         }
+        if (inSettings) {
+            sink.settings(settings.toString());
+        } else if (!lineStart) {
+            sink.endLine();
+        } else if (!seenSettings) {
+            throw error("missing settings line");
+        }
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private Reader _input;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Name of the configuration file. */
+    private String _configName;
+
+    /** Contents of the configuration file, in text or compiled form (see
+     *  CompiledConfig), until read. */
+    private byte[] _config;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private Writer _output;
+
+    /** Number of rotor slots in the configured machine. */
+    private int _numRotors;
+
+    /** Number of pawls in the configured machine. */
+    private int _numPawls;
+
+    /** True iff _input is a file I opened. */
+    private boolean _closeInput;
+
+    /** True iff _output is a file I opened. */
+    private boolean _closeOutput;
+
+    /** True iff messages are processed by a three-stage Pipeline. */
+    private boolean _pipeline;
+
+    /** True iff independent settings sections are processed
+     *  concurrently.  Ignored when tracing. */
+    private boolean _sections;
+
+    /** Case folding applied to messages. */
+    private LineCodec.Case _case = LineCodec.Case.KEEP;
+
+    /** Treatment of message characters outside the alphabet. */
+    private LineCodec.Invalid _invalid = LineCodec.Invalid.CONVERT;
+
+    /** Name of the file to record a binary trace in, or null. */
+    private String _traceFile;
+
+    /** Makes the cursors of traced machines, or null if not tracing. */
+    private Tracer _tracer;
+
+    /** Value of System.nanoTime() when the current section of messages
+     *  began, or 0 before the first. */
+    private long _sectionStart;
 
     /** True if --verbose specified. */
     private static boolean _verbose;
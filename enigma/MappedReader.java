@@ -0,0 +1,126 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/** A Reader over a file in a single-byte (ISO-8859-1) encoding that maps
+ *  the file into memory a window at a time rather than reading it
+ *  through the usual stream layers.  Each byte is a char, so read()
+ *  takes the next one straight from the window, and each window is
+ *  released as soon as it has been read rather than when it is
+ *  collected.
+ *  @author Nathan Mehta
+ */
+class MappedReader extends Reader {
+
+    /** Largest portion of the file mapped at once. */
+    static final long WINDOW = 1L << 30;
+
+    /** A Reader over the file named NAME. */
+    MappedReader(String name) throws IOException {
+        _channel = FileChannel.open(Paths.get(name), StandardOpenOption.READ);
+        _size = _channel.size();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if ((_window == null || !_window.hasRemaining()) && !nextWindow()) {
+            return -1;
+        }
+        return _window.get() & 0xff;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if ((_window == null || !_window.hasRemaining()) && !nextWindow()) {
+            return -1;
+        }
+        int n = Math.min(len, _window.remaining());
+        for (int i = 0; i < n; i += 1) {
+            cbuf[off + i] = (char) (_window.get() & 0xff);
+        }
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        release();
+        _channel.close();
+    }
+
+    /** Release the current window, if any, and map the next, returning
+     *  false if the whole file has been mapped. */
+    private boolean nextWindow() throws IOException {
+        release();
+        if (_mapped == _size) {
+            return false;
+        }
+        long span = Math.min(WINDOW, _size - _mapped);
+        _window = _channel.map(FileChannel.MapMode.READ_ONLY, _mapped, span);
+        _mapped += span;
+        return true;
+    }
+
+    /** Count the bytes read from the current window, if any, and
+     *  release it. */
+    private void release() {
+        if (_window != null) {
+            Metrics.global().bytesIn(_window.position());
+            unmap(_window);
+            _window = null;
+        }
+    }
+
+    /** Release the memory mapped for WINDOW now, where the platform
+     *  allows, rather than when WINDOW is collected.  WINDOW must not be
+     *  used again. */
+    static void unmap(MappedByteBuffer window) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, window);
+        } catch (ReflectiveOperationException excp) {
+            return;
+        }
+    }
+
+    /** The platform's sun.misc.Unsafe, or null if it has none. */
+    private static final Object UNSAFE;
+    /** Unsafe.invokeCleaner(ByteBuffer), which unmaps a mapped buffer,
+     *  or null if the platform has none. */
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> cls = Class.forName("sun.misc.Unsafe");
+            Field field = cls.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = cls.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    /** The file I read. */
+    private final FileChannel _channel;
+    /** Size of the file. */
+    private final long _size;
+    /** Number of bytes of the file mapped so far. */
+    private long _mapped;
+    /** The mapped window being read, or null. */
+    private MappedByteBuffer _window;
+}
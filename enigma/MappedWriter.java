@@ -0,0 +1,90 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A Writer to a file in a single-byte (ISO-8859-1) encoding that stores
+ *  into memory-mapped windows of the file, extending it as needed, and
+ *  trims it to the length written when closed.  Each char is a byte, so
+ *  write(int) stores it straight into the window, and each window is
+ *  released as soon as it is full rather than when it is collected.
+ *  Like a FileOutputStream, it leaves writing the data to disk to the
+ *  operating system rather than forcing it there.
+ *  @author Nathan Mehta
+ */
+class MappedWriter extends Writer {
+
+    /** Size of each mapped window. */
+    static final long WINDOW = 1L << 26;
+
+    /** A Writer replacing the contents of the file named NAME. */
+    MappedWriter(String name) throws IOException {
+        _channel = FileChannel.open(Paths.get(name),
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        char ch = (char) c;
+        if (ch > 0xff) {
+            throw error("character %c cannot be written in --mmap mode", ch);
+        }
+        if (_window == null || !_window.hasRemaining()) {
+            nextWindow();
+        }
+        _window.put((byte) ch);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i += 1) {
+            write(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() throws IOException {
+        release();
+        _channel.truncate(_written);
+        _channel.close();
+    }
+
+    /** Release the current window, if any, and map the one following
+     *  it. */
+    private void nextWindow() throws IOException {
+        release();
+        _window = _channel.map(FileChannel.MapMode.READ_WRITE,
+                               _written, WINDOW);
+    }
+
+    /** Count the bytes stored in the current window, if any, and release
+     *  it. */
+    private void release() {
+        if (_window != null) {
+            _written += _window.position();
+            Metrics.global().bytesOut(_window.position());
+            MappedReader.unmap(_window);
+            _window = null;
+        }
+    }
+
+    /** The file I write. */
+    private final FileChannel _channel;
+    /** Number of bytes in windows already filled. */
+    private long _written;
+    /** The window being filled, or null. */
+    private MappedByteBuffer _window;
+}
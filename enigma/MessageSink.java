@@ -0,0 +1,22 @@
+package enigma;
+
+import java.io.IOException;
+
+/** A receiver for the contents of a message input, as split by
+ *  Main.splitLines into settings lines and message text.
+ *  @author Nathan Mehta
+ */
+interface MessageSink {
+
+    /** Receive the settings line LINE (without its terminator). */
+    void settings(String line) throws IOException;
+
+    /** Receive the LEN characters of message text in BUF starting at OFF,
+     *  which continue the current message line.  BUF may be reused once
+     *  this returns. */
+    void text(char[] buf, int off, int len) throws IOException;
+
+    /** Receive the end of the current message line. */
+    void endLine() throws IOException;
+
+}
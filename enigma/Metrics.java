@@ -0,0 +1,314 @@
+package enigma;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/** Running totals of the work done in this JVM: characters converted,
+ *  rotor steps and notch events, bytes of messages read and written,
+ *  configuration parse times, per-section latencies and, once
+ *  register() has been called, the heap allocated by the threads that
+ *  convert messages (see allocationMark()).  Every total is
+ *  striped (LongAdder), and the machines report once per buffer of
+ *  characters rather than once per character, so the totals are always
+ *  kept.  They are exposed over JMX once register() is called (see
+ *  --metrics), and summary() formats them for the end of a run.
+ *  @author Nathan Mehta
+ */
+class Metrics implements MetricsMBean {
+
+    /** The JMX name of the metrics of this JVM. */
+    static final String NAME = "enigma:type=Metrics";
+
+    /** Return the metrics of this JVM. */
+    static Metrics global() {
+        return GLOBAL;
+    }
+
+    /** Return true iff this JVM was started with a JMX agent, so that
+     *  registering costs next to nothing. */
+    static boolean managed() {
+        return System.getProperty("com.sun.management.jmxremote") != null;
+    }
+
+    /** Record the conversion of CHARS characters, of which NOTCHES moved
+     *  a rotor other than the fast one. */
+    void converted(long chars, long notches) {
+        _characters.add(chars);
+        if (notches != 0) {
+            _notchEvents.add(notches);
+        }
+    }
+
+    /** Record a jump of STEPS rotor steps made without converting. */
+    void advanced(long steps) {
+        _advanced.add(steps);
+    }
+
+    /** Record the reading of N bytes of messages. */
+    void bytesIn(long n) {
+        _bytesIn.add(n);
+    }
+
+    /** Record the writing of N bytes of messages. */
+    void bytesOut(long n) {
+        _bytesOut.add(n);
+    }
+
+    /** Return a stream reading IN and recording the bytes read as
+     *  message bytes. */
+    InputStream countIn(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    bytesIn(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len)
+                throws IOException {
+                int n = super.read(buf, off, len);
+                if (n > 0) {
+                    bytesIn(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    /** Return a stream writing to OUT and recording the bytes written as
+     *  message bytes. */
+    OutputStream countOut(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesOut(1);
+            }
+
+            @Override
+            public void write(byte[] buf, int off, int len)
+                throws IOException {
+                out.write(buf, off, len);
+                bytesOut(len);
+            }
+        };
+    }
+
+    /** Record the reading of a configuration file in NANOS
+     *  nanoseconds. */
+    void configParsed(long nanos) {
+        _configs.increment();
+        _configNanos.add(nanos);
+    }
+
+    /** Record the processing of a section in NANOS nanoseconds. */
+    void section(long nanos) {
+        _sections.record(nanos);
+    }
+
+    /** Return a mark of the heap allocated so far by the current thread,
+     *  to be passed to allocated() when it finishes a piece of
+     *  conversion, or -1 if allocations are not being counted. */
+    long allocationMark() {
+        com.sun.management.ThreadMXBean threads = _threads;
+        return threads == null ? -1
+            : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    /** Record the heap allocated by the current thread since MARK, a
+     *  value of allocationMark() taken on this thread. */
+    void allocated(long mark) {
+        com.sun.management.ThreadMXBean threads = _threads;
+        if (mark >= 0 && threads != null) {
+            _allocated.add(threads.getCurrentThreadAllocatedBytes() - mark);
+        }
+    }
+
+    /** Make me visible over JMX as NAME, unless I already am, and start
+     *  counting allocations if the JVM can. */
+    void register() {
+        if (ManagementFactory.getThreadMXBean()
+            instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean();
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                _threads = threads;
+            }
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(NAME);
+            synchronized (this) {
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(this, name);
+                }
+            }
+        } catch (JMException excp) {
+            throw error("could not register metrics: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Print a summary of my totals to OUT. */
+    void summary(PrintStream out) {
+        double seconds = (System.nanoTime() - _start) / 1e9;
+        out.printf("metrics: %d characters in %.3f s, %.0f chars/s%n",
+                   getCharacters(), seconds, getCharactersPerSecond());
+        out.printf("  bytes in %d, bytes out %d%n",
+                   getBytesIn(), getBytesOut());
+        out.printf("  rotor steps %d, notch events %d%n",
+                   getRotorSteps(), getNotchEvents());
+        out.printf("  configs parsed %d in %.3f ms%n",
+                   getConfigsParsed(), getConfigParseMillis());
+        out.printf("  sections %d: mean %.3f ms, p50 %.3f ms, "
+                   + "p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n",
+                   getSections(), getSectionMeanMillis(),
+                   getSectionP50Millis(), getSectionP99Millis(),
+                   getSectionP999Millis(), getSectionMaxMillis());
+        long collections = 0, gcMillis = 0;
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections += Math.max(0, gc.getCollectionCount());
+            gcMillis += Math.max(0, gc.getCollectionTime());
+        }
+        out.printf("  allocated %d bytes while converting; "
+                   + "gc %d collections, %d ms%n",
+                   getAllocatedBytes(), collections, gcMillis);
+        out.flush();
+    }
+
+    @Override
+    public long getCharacters() {
+        return _characters.sum();
+    }
+
+    @Override
+    public double getCharactersPerSecond() {
+        double seconds = (System.nanoTime() - _start) / 1e9;
+        return seconds <= 0 ? 0 : getCharacters() / seconds;
+    }
+
+    @Override
+    public long getRotorSteps() {
+        return _characters.sum() + _advanced.sum();
+    }
+
+    @Override
+    public long getNotchEvents() {
+        return _notchEvents.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return _bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return _bytesOut.sum();
+    }
+
+    @Override
+    public long getConfigsParsed() {
+        return _configs.sum();
+    }
+
+    @Override
+    public double getConfigParseMillis() {
+        return _configNanos.sum() / 1e6;
+    }
+
+    @Override
+    public long getSections() {
+        return _sections.count();
+    }
+
+    @Override
+    public double getSectionMeanMillis() {
+        return _sections.mean() / 1e6;
+    }
+
+    @Override
+    public double getSectionP50Millis() {
+        return _sections.valueAt(50) / 1e6;
+    }
+
+    @Override
+    public double getSectionP99Millis() {
+        return _sections.valueAt(99) / 1e6;
+    }
+
+    @Override
+    public double getSectionP999Millis() {
+        return _sections.valueAt(99.9) / 1e6;
+    }
+
+    @Override
+    public double getSectionMaxMillis() {
+        return _sections.max() / 1e6;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return _threads == null ? -1 : _allocated.sum();
+    }
+
+    @Override
+    public void reset() {
+        _start = System.nanoTime();
+        _characters.reset();
+        _advanced.reset();
+        _notchEvents.reset();
+        _bytesIn.reset();
+        _bytesOut.reset();
+        _configs.reset();
+        _configNanos.reset();
+        _sections.reset();
+        _allocated.reset();
+    }
+
+    /** The metrics of this JVM. */
+    private static final Metrics GLOBAL = new Metrics();
+
+    /** Value of System.nanoTime() when my totals started. */
+    private volatile long _start = System.nanoTime();
+    /** Characters converted, each one rotor step. */
+    private final LongAdder _characters = new LongAdder();
+    /** Rotor steps jumped over without converting. */
+    private final LongAdder _advanced = new LongAdder();
+    /** Conversion steps that moved a rotor other than the fast one. */
+    private final LongAdder _notchEvents = new LongAdder();
+    /** Bytes of messages read. */
+    private final LongAdder _bytesIn = new LongAdder();
+    /** Bytes of messages written. */
+    private final LongAdder _bytesOut = new LongAdder();
+    /** Configuration files read. */
+    private final LongAdder _configs = new LongAdder();
+    /** Nanoseconds spent reading configuration files. */
+    private final LongAdder _configNanos = new LongAdder();
+    /** Nanoseconds taken by each section. */
+    private final Histogram _sections = new Histogram();
+    /** Bytes allocated by threads while converting. */
+    private final LongAdder _allocated = new LongAdder();
+    /** Counts the allocations of threads, once register() has been
+     *  called, or null. */
+    private volatile com.sun.management.ThreadMXBean _threads;
+}
@@ -0,0 +1,61 @@
+package enigma;
+
+/** The management interface of Metrics, as JMX presents it under the
+ *  name Metrics.NAME.  Totals run from the start of the JVM or the last
+ *  reset; latencies are in milliseconds.
+ *  @author Nathan Mehta
+ */
+public interface MetricsMBean {
+
+    /** Return the number of characters converted. */
+    long getCharacters();
+
+    /** Return the mean number of characters converted per second. */
+    double getCharactersPerSecond();
+
+    /** Return the number of rotor steps taken, whether by converting or by
+     *  jumping ahead. */
+    long getRotorSteps();
+
+    /** Return the number of conversion steps that moved a rotor other
+     *  than the fast one. */
+    long getNotchEvents();
+
+    /** Return the number of bytes of messages read. */
+    long getBytesIn();
+
+    /** Return the number of bytes of messages written. */
+    long getBytesOut();
+
+    /** Return the number of configuration files read. */
+    long getConfigsParsed();
+
+    /** Return the total time spent reading configuration files. */
+    double getConfigParseMillis();
+
+    /** Return the number of settings sections processed. */
+    long getSections();
+
+    /** Return the mean time taken by a section. */
+    double getSectionMeanMillis();
+
+    /** Return the median time taken by a section. */
+    double getSectionP50Millis();
+
+    /** Return the 99th percentile of the time taken by a section. */
+    double getSectionP99Millis();
+
+    /** Return the 99.9th percentile of the time taken by a section. */
+    double getSectionP999Millis();
+
+    /** Return the longest time taken by a section. */
+    double getSectionMaxMillis();
+
+    /** Return the number of bytes of heap allocated by threads while
+     *  converting messages, counted since the metrics were registered,
+     *  or -1 if the JVM cannot count them. */
+    long getAllocatedBytes();
+
+    /** Zero all totals and restart the clock. */
+    void reset();
+}
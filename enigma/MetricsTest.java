@@ -0,0 +1,152 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Metrics and Histogram classes.
+ *  @author
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Return a machine with the naval rotors B, Beta, III, IV and I at
+     *  AXLE. */
+    private Machine machine() {
+        return TestUtils.navalMachine(AZ, "AXLE", "");
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testHistogramBuckets() {
+        Random rand = new Random(61);
+        for (int k = 0; k < 10000; k += 1) {
+            long v = (rand.nextLong() >>> 1) >>> rand.nextInt(63);
+            int i = Histogram.index(v);
+            assertTrue(Histogram.highest(i) >= v);
+            assertTrue(i == 0 || Histogram.highest(i - 1) < v);
+            double error = (double) (Histogram.highest(i) - v) / v;
+            double bound = 1.0 / (1 << (Histogram.SUB_BITS - 1));
+            assertTrue(v == 0 || error <= bound);
+        }
+        assertEquals(Long.MAX_VALUE,
+                     Histogram.highest(Histogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        Histogram hist = new Histogram();
+        assertEquals(0, hist.valueAt(50));
+        for (long v = 1; v <= 100000; v += 1) {
+            hist.record(v);
+        }
+        assertEquals(100000, hist.count());
+        assertEquals(100000, hist.max());
+        assertEquals(50000.5, hist.mean(), 1e-6);
+        assertEquals(50000, hist.valueAt(50), 50000 / 32);
+        assertEquals(99000, hist.valueAt(99), 99000 / 32);
+        assertEquals(100000, hist.valueAt(100));
+        hist.reset();
+        assertEquals(0, hist.count());
+        assertEquals(0, hist.max());
+    }
+
+    @Test
+    public void testMachineCounts() {
+        Metrics metrics = Metrics.global();
+        Machine mach = machine();
+        Machine reference = machine();
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        msg = msg + msg + msg + msg + msg + msg + msg + msg;
+        long notches = 0;
+        for (int i = 0; i < msg.length(); i += 1) {
+            int[] before = reference.settings();
+            reference.convert(AZ.toInt(msg.charAt(i)));
+            int[] after = reference.settings();
+            for (int k = 0; k < after.length - 1; k += 1) {
+                if (before[k] != after[k]) {
+                    notches += 1;
+                    break;
+                }
+            }
+        }
+        assertTrue(notches > 0);
+
+        long chars = metrics.getCharacters();
+        long steps = metrics.getRotorSteps();
+        long notchEvents = metrics.getNotchEvents();
+        mach.convert(msg);
+        mach.advance(1000);
+        assertEquals(msg.length(), metrics.getCharacters() - chars);
+        assertEquals(msg.length() + 1000, metrics.getRotorSteps() - steps);
+        assertEquals(notches, metrics.getNotchEvents() - notchEvents);
+    }
+
+    @Test
+    public void testSingleCharactersReported() {
+        Metrics metrics = Metrics.global();
+        Machine mach = machine();
+        long chars = metrics.getCharacters();
+        for (int i = 0; i < 100; i += 1) {
+            mach.convert(i % 26);
+        }
+        mach.setRotors("AAAA");
+        assertEquals(100, metrics.getCharacters() - chars);
+        chars = metrics.getCharacters();
+        for (int i = 0; i < Machine.REPORT_INTERVAL; i += 1) {
+            mach.convert(i % 26);
+        }
+        assertEquals(Machine.REPORT_INTERVAL,
+                     metrics.getCharacters() - chars);
+    }
+
+    @Test
+    public void testAllocationsCounted() {
+        Metrics metrics = Metrics.global();
+        metrics.register();
+        long before = metrics.getAllocatedBytes();
+        assertTrue(before >= 0);
+        long mark = metrics.allocationMark();
+        int[][] garbage = new int[16][];
+        for (int i = 0; i < garbage.length; i += 1) {
+            garbage[i] = new int[1 << 16];
+        }
+        metrics.allocated(mark);
+        assertTrue(metrics.getAllocatedBytes() - before
+                   >= garbage.length * (4L << 16));
+    }
+
+    @Test
+    public void testBytesCounted() throws IOException {
+        Metrics metrics = Metrics.global();
+        long in = metrics.getBytesIn(), out = metrics.getBytesOut();
+        byte[] data = new byte[10000];
+        InputStream counted =
+            metrics.countIn(new ByteArrayInputStream(data));
+        byte[] buf = new byte[4096];
+        counted.read();
+        while (counted.read(buf, 0, buf.length) != -1) {
+            continue;
+        }
+        OutputStream sink = metrics.countOut(new ByteArrayOutputStream());
+        sink.write(data, 0, 1234);
+        sink.write(7);
+        assertEquals(10000, metrics.getBytesIn() - in);
+        assertEquals(1235, metrics.getBytesOut() - out);
+    }
+}
@@ -7,7 +7,9 @@ import static enigma.EnigmaException.*;
  */
 class MovingRotor extends Rotor {
     /** notches. */
-    private String _notches;
+    private final String _notches;
+    /** Bit K of word K / 64 is set iff position K is a notch. */
+    private final long[] _notchMask;
 
     /** A rotor named NAME whose permutation in its default setting is
      *  PERM, and whose notches are at the positions indicated in NOTCHES.
@@ -17,7 +19,35 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+        _notchMask = new long[(size() + 63) >>> 6];
+        for (int cp : notches.codePoints().toArray()) {
+            int posn = alphabet().codePointToInt(cp);
+            if (posn >= 0) {
+                _notchMask[posn >>> 6] |= 1L << posn;
+            }
+        }
+    }
 
+    /** A rotor named NAME whose permutation in its default setting is
+     *  PERM, and whose notches are at the positions set in NOTCHMASK, a
+     *  mask as returned by notchMask().  It is an error if NOTCHMASK
+     *  sets positions outside the alphabet. */
+    MovingRotor(String name, Permutation perm, long[] notchMask) {
+        super(name, perm);
+        int words = (size() + 63) >>> 6;
+        if (notchMask.length != words
+            || size() % 64 != 0
+               && notchMask[words - 1] >>> (size() % 64) != 0) {
+            throw error("notch mask has positions outside the alphabet");
+        }
+        _notchMask = notchMask.clone();
+        StringBuilder notches = new StringBuilder();
+        for (int q = 0; q < size(); q++) {
+            if (atNotch(q)) {
+                notches.appendCodePoint(alphabet().toCodePoint(q));
+            }
+        }
+        _notches = notches.toString();
     }
 
     @Override
@@ -32,6 +62,16 @@ class MovingRotor extends Rotor {
         return _notches;
     }
 
+    @Override
+    long[] notchMask() {
+        return _notchMask;
+    }
+
+    @Override
+    boolean atNotch(int posn) {
+        return (_notchMask[posn >>> 6] & (1L << posn)) != 0;
+    }
+
     @Override
     boolean rotates() {
         return true;
@@ -95,4 +95,25 @@ public class MovingRotorTest {
                 rotor.convertBackward(alpha.indexOf('S')));
     }
 
+    @Test
+    public void checkNotchMask() {
+        setRotor("I", NAVALA, "QAZ");
+        long[] mask = rotor.notchMask();
+        assertEquals(1, mask.length);
+        assertEquals(1L | 1L << 16 | 1L << 25, mask[0]);
+        Rotor copy = new MovingRotor("I", rotor.permutation(), mask);
+        assertEquals("AQZ", copy.notches());
+        for (int q = 0; q < 26; q += 1) {
+            assertEquals(rotor.atNotch(q), copy.atNotch(q));
+        }
+        assertEquals(0, new FixedRotor("F", rotor.permutation())
+                     .notchMask()[0]);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkNotchMaskOutsideAlphabet() {
+        new MovingRotor("I", new Permutation(NAVALA.get("I"), UPPER),
+                        new long[] { 1L << 26 });
+    }
+
 }
@@ -0,0 +1,189 @@
+package enigma;
+
+/** The stepping mechanism of a machine: which slots rotate and where
+ *  their notches are.  An Odometer holds no positions itself; it
+ *  advances settings arrays (indexed by slot, as Machine.settings()
+ *  returns them) one step at a time or many steps at once.
+ *  @author Nathan Mehta
+ */
+class Odometer {
+
+    /** The stepping mechanism for the rotors in SLOTS, where SLOTS[0] is
+     *  the reflector and SLOTS[SLOTS.length - 1] is the fast rotor. */
+    Odometer(Rotor[] slots) {
+        _n = slots.length;
+        _size = slots[0].size();
+        _rotates = new boolean[_n];
+        _notches = new long[_n][];
+        _numNotches = new int[_n];
+        for (int r = 0; r < _n; r += 1) {
+            _rotates[r] = slots[r].rotates();
+            _notches[r] = slots[r].notchMask();
+            for (long word : _notches[r]) {
+                _numNotches[r] += Long.bitCount(word);
+            }
+        }
+        _first = _n;
+        while (_first > 0 && _rotates[_first - 1]) {
+            _first -= 1;
+        }
+        _arithmetic = _first < _n;
+        for (int r = 0; r < _first; r += 1) {
+            _arithmetic &= !_rotates[r];
+        }
+        for (int r = _first + 1; r < _n; r += 1) {
+            for (int q = 0; q < _size; q += 1) {
+                _arithmetic &= !(notch(r, q) && notch(r, (q + 1) % _size));
+            }
+        }
+    }
+
+    /** Return true iff the rotor in slot R has a notch at position Q. */
+    boolean notch(int r, int q) {
+        return (_notches[r][q >>> 6] & (1L << q)) != 0;
+    }
+
+    /** Advance POSNS by one step, returning the leftmost slot that
+     *  moved.  The fast rotor always advances; a rotating rotor whose right
+     *  neighbor is at a notch advances, and pushes that neighbor along
+     *  with it. */
+    int step(int[] posns) {
+        int leftmost = _n;
+        boolean pushed = false;
+        for (int r = 0; r < _n; r += 1) {
+            boolean pushing = r < _n - 1 && _rotates[r]
+                && notch(r + 1, posns[r + 1]);
+            if ((pushed || pushing || r == _n - 1) && _rotates[r]) {
+                posns[r] = posns[r] + 1 == _size ? 0 : posns[r] + 1;
+                leftmost = Math.min(leftmost, r);
+            }
+            pushed = pushing;
+        }
+        return leftmost;
+    }
+
+    /** Advance POSNS by N >= 0 steps.  Unless some rotor whose notches
+     *  matter has notches at two adjacent positions (or rotating rotors
+     *  do not form a suffix of the slots), this takes time independent
+     *  of N; otherwise it steps N times. */
+    void advance(int[] posns, long n) {
+        if (n <= 0) {
+            return;
+        }
+        if (!_arithmetic) {
+            for (long k = 0; k < n; k += 1) {
+                step(posns);
+            }
+            return;
+        }
+        step(posns);
+        n -= 1;
+        long[] moves = new long[_n];
+        for (int r = _first; r < _n; r += 1) {
+            moves[r] = advances(posns, r, n);
+        }
+        for (int r = _first; r < _n; r += 1) {
+            posns[r] = (int) ((posns[r] + moves[r] % _size) % _size);
+        }
+    }
+
+    /* The arithmetic below relies on two facts.  A rotor whose notches
+     * matter (the fast rotor, or one whose left neighbor rotates)
+     * advances on every step that begins with it at a notch, so it is
+     * at a notch for exactly one step per notch position it passes.
+     * And once the first step is taken, no notch-driven advance of a
+     * rotor ever coincides with a carry into it, because that would
+     * need two adjacent notches.  So a rotating rotor's advances from
+     * non-notch positions are exactly the carries from its right
+     * neighbor, and each landing on a notch is followed by one extra
+     * advance on the next step. */
+
+    /** Return the number of times the rotor in slot R advances in the
+     *  first N steps starting from POSNS. */
+    private long advances(int[] posns, int r, long n) {
+        if (n <= 0) {
+            return 0;
+        } else if (r == _n - 1) {
+            return n;
+        }
+        long carries = notchCount(r + 1, posns[r + 1],
+                                  advances(posns, r + 1, n - 1) + 1);
+        if (r == _first) {
+            return carries;
+        }
+        long landed = carries == 0 ? 0
+            : kthOffset(r, posns[r], carries, false) + 1;
+        int q = (int) ((posns[r] + landed % _size) % _size);
+        long landTime = carries == 0 ? 0 : carryTime(posns, r, carries);
+        if (notch(r, q) && landTime + 1 <= n) {
+            landed += 1;
+        }
+        return landed;
+    }
+
+    /** Return the step at which the rotor in slot R makes its Kth
+     *  advance (K >= 1) starting from POSNS, or 0 if K is 0. */
+    private long advanceTime(int[] posns, int r, long k) {
+        if (k == 0) {
+            return 0;
+        } else if (r == _n - 1) {
+            return k;
+        }
+        int from = (int) ((posns[r] + (k - 1) % _size) % _size);
+        if (notch(r, from)) {
+            return advanceTime(posns, r, k - 1) + 1;
+        }
+        long nonNotches = k - notchCount(r, posns[r], k);
+        return carryTime(posns, r, nonNotches);
+    }
+
+    /** Return the step at which the Eth carry (E >= 1) into the rotor in
+     *  slot R occurs, starting from POSNS. */
+    private long carryTime(int[] posns, int r, long e) {
+        long offset = kthOffset(r + 1, posns[r + 1], e, true);
+        return advanceTime(posns, r + 1, offset) + 1;
+    }
+
+    /** Return the number of notches of the rotor in slot R among the LEN
+     *  positions starting at P. */
+    private long notchCount(int r, int p, long len) {
+        long count = (len / _size) * _numNotches[r];
+        for (int i = 0; i < len % _size; i += 1) {
+            if (notch(r, (p + i) % _size)) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Return the offset from P of the Eth (E >= 1) position at which the
+     *  rotor in slot R has a notch (if NOTCHED) or has none (if not). */
+    private long kthOffset(int r, int p, long e, boolean notched) {
+        int perRev = notched ? _numNotches[r] : _size - _numNotches[r];
+        long full = (e - 1) / perRev;
+        long rem = (e - 1) % perRev + 1;
+        for (int i = 0; ; i += 1) {
+            if (notch(r, (p + i) % _size) == notched) {
+                rem -= 1;
+                if (rem == 0) {
+                    return full * _size + i;
+                }
+            }
+        }
+    }
+
+    /** Number of slots. */
+    private final int _n;
+    /** Alphabet size. */
+    private final int _size;
+    /** _rotates[r] is true iff slot R has a ratchet. */
+    private final boolean[] _rotates;
+    /** Bitmask of notch positions per slot, as Rotor.notchMask(). */
+    private final long[][] _notches;
+    /** Number of notch positions per slot. */
+    private final int[] _numNotches;
+    /** Leftmost slot of the suffix of rotating slots. */
+    private int _first;
+    /** True iff advance may skip steps arithmetically. */
+    private boolean _arithmetic;
+}
@@ -1,38 +1,128 @@
 package enigma;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  The tables of all permutations are
+ *  interned by content in a concurrent pool that holds them weakly, so
+ *  that equal permutations (the same plugboard on many settings lines,
+ *  or the same rotor in many configurations) share one table, which
+ *  lasts as long as some permutation uses it.
  *  @author Nathan Mehta
  */
 class Permutation {
-    /** cycs array. */
-    private String[] cycsArray;
-    /** cycs. */
-    private String  _cycles;
+    /** My forward and inverse tables, shared with equal permutations. */
+    private final Table _table;
     /** Set this Permutation to that specified by CYCLES, a string in the
      *  form "(cccc) (cc) ..." where the c's are characters in ALPHABET, which
      *  is interpreted as a permutation in cycle notation.  Characters in the
      *  alphabet that are not included in any cycle map to themselves.
-     *  Whitespace is ignored. */
+     *  Whitespace between cycles is ignored.  No character may appear
+     *  more than once. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        _cycles = cycles;
-        String trimmed = cycles.trim();
-        trimmed = trimmed.replace("(", " ");
-        trimmed = trimmed.replace(")", " ");
-        cycsArray = trimmed.split(" ");
+        int[] forward = new int[size()], inverse = new int[size()];
+        boolean[] seen = new boolean[size()];
+        for (int i = 0; i < size(); i++) {
+            forward[i] = i;
+            inverse[i] = i;
+        }
+        int start = -1;
+        for (int i = 0; i < cycles.length(); i++) {
+            char ch = cycles.charAt(i);
+            if (ch == '(') {
+                start = i + 1;
+            } else if (ch == ')') {
+                if (start < 0) {
+                    throw error("unbalanced cycle in %s", cycles);
+                }
+                addCycle(cycles.substring(start, i), forward, inverse,
+                         seen);
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            throw error("unbalanced cycle in %s", cycles);
+        }
+        _table = intern(forward, inverse);
     }
 
+    /** A permutation of the indices of ALPHABET taking each index K to
+     *  FORWARD[K].  It is an error if FORWARD is not a permutation of
+     *  0 .. ALPHABET.size() - 1. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        _alphabet = alphabet;
+        checkTable(forward);
+        int[] inverse = new int[forward.length];
+        Arrays.fill(inverse, -1);
+        for (int i = 0; i < forward.length; i++) {
+            if (inverse[forward[i]] != -1) {
+                throw error("index %d appears more than once in "
+                            + "permutation table", forward[i]);
+            }
+            inverse[forward[i]] = i;
+        }
+        _table = intern(forward, inverse);
+    }
 
-    /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    private void addCycle(String cycle) {
-        String[] withNewCyc = new String[cycsArray.length + 1];
-        System.arraycopy(cycsArray, 0, withNewCyc, 0, cycsArray.length);
-        withNewCyc[cycsArray.length + 1] = cycle;
-        cycsArray = withNewCyc;
+    /** A permutation of the indices of ALPHABET taking each index K to
+     *  FORWARD[K], whose inverse is INVERSE.  It is an error if FORWARD
+     *  is not a permutation of 0 .. ALPHABET.size() - 1 or INVERSE is
+     *  not its inverse. */
+    Permutation(int[] forward, int[] inverse, Alphabet alphabet) {
+        _alphabet = alphabet;
+        checkTable(forward);
+        checkTable(inverse);
+        for (int i = 0; i < forward.length; i++) {
+            if (inverse[forward[i]] != i) {
+                throw error("inverse table does not match permutation "
+                            + "table at index %d", i);
+            }
+        }
+        _table = intern(forward, inverse);
+    }
+
+    /** Check that TABLE has one entry for each index of my alphabet, each
+     *  of them an index. */
+    private void checkTable(int[] table) {
+        if (table.length != size()) {
+            throw error("permutation table has %d entries, not %d",
+                        table.length, size());
+        }
+        for (int v : table) {
+            if (v < 0 || v >= size()) {
+                throw error("%d in permutation table is not an index", v);
+            }
+        }
+    }
+
+    /** Add the cycle c0->c1->...->cm->c0 to the tables FORWARD and
+     *  INVERSE, where CYCLE is c0c1...cm, marking its indices in SEEN,
+     *  none of which may already be marked.  Whitespace at either end of
+     *  CYCLE is ignored; whitespace within it is an error. */
+    private void addCycle(String cycle, int[] forward, int[] inverse,
+                          boolean[] seen) {
+        int[] cyc = cycle.trim().codePoints().toArray();
+        for (int j = 0; j < cyc.length; j++) {
+            int f = alphabet().codePointToInt(cyc[j]);
+            int t = alphabet().codePointToInt(cyc[(j + 1) % cyc.length]);
+            if (f == -1 || t == -1) {
+                throw error("cycle %s not in alphabet", cycle);
+            } else if (seen[f]) {
+                throw error("'%s' appears more than once in cycles",
+                            new String(Character.toChars(cyc[j])));
+            }
+            seen[f] = true;
+            forward[f] = t;
+            inverse[t] = f;
+        }
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -52,45 +142,13 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char permutedChar = alphabet().toChar(wrap(p));
-        char permutedTo = 't';
-        for (int i = 0; i < cycsArray.length; i++) {
-            for (int j = 0; j < cycsArray[i].length(); j++) {
-                if (cycsArray[i].charAt(j) == permutedChar) {
-                    permutedTo = cycsArray[i].charAt((j + 1)
-                            % (cycsArray[i].length()));
-                    return alphabet().toInt(permutedTo);
-                }
-            }
-        } return p;
-
+        return _table.forward(wrap(p));
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char permutedChar = alphabet().toChar(wrap(c));
-        char permutedTo = 't';
-        for (int i = 0; i < cycsArray.length; i++) {
-            for (int j = 0; j < cycsArray[i].length(); j++) {
-                if (cycsArray[i].charAt(j) == permutedChar) {
-                    if (cycsArray[i].length() == 1) {
-                        permutedTo = cycsArray[i].charAt(j);
-                        return alphabet().toInt(permutedTo);
-                    } else if (j == 0) {
-                        permutedTo = cycsArray[i].charAt(((j - 1)
-                                % (cycsArray[i].length()))
-                                + cycsArray[i].length());
-                        return alphabet().toInt(permutedTo);
-                    } else {
-                        permutedTo = cycsArray[i].charAt((j - 1)
-                                % (cycsArray[i].length()));
-                        return alphabet().toInt(permutedTo);
-                    }
-                }
-            }
-        } return c;
-
+        return _table.inverse(wrap(c));
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -116,13 +174,464 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (int i = 0; i < alphabet().size(); i++) {
-            if (permute(alphabet().toChar(i)) == alphabet().toChar(i)) {
+        for (int i = 0; i < _table.size(); i++) {
+            if (_table.forward(i) == i) {
                 return false;
             }
         } return true;
     }
 
+    /** Return the permutation that applies me and then THEN, which must
+     *  permute an alphabet of my size. */
+    Permutation compose(Permutation then) {
+        return new Permutation(compose(then, new int[size()]), _alphabet);
+    }
+
+    /** Fill RESULT, of length at least size(), with the table of
+     *  compose(THEN), and return it. */
+    int[] compose(Permutation then, int[] result) {
+        if (then.size() != size()) {
+            throw error("cannot compose permutations of sizes %d and %d",
+                        size(), then.size());
+        }
+        Table first = _table, second = then._table;
+        for (int i = 0; i < first.size(); i++) {
+            result[i] = second.forward(first.forward(i));
+        }
+        return result;
+    }
+
+    /** Return my inverse. */
+    Permutation inverse() {
+        int[] forward = new int[size()];
+        int[] inverse = new int[size()];
+        for (int i = 0; i < forward.length; i++) {
+            forward[i] = _table.inverse(i);
+            inverse[i] = _table.forward(i);
+        }
+        return new Permutation(forward, inverse, _alphabet);
+    }
+
+    /** Fill RESULT, of length at least size(), with the table of my
+     *  inverse, and return it. */
+    int[] inverse(int[] result) {
+        for (int i = 0; i < _table.size(); i++) {
+            result[i] = _table.inverse(i);
+        }
+        return result;
+    }
+
+    /** Return the permutation that applies me K times (my inverse -K
+     *  times if K is negative). */
+    Permutation pow(long k) {
+        return new Permutation(pow(k, new int[size()]), _alphabet);
+    }
+
+    /** Fill RESULT, of length at least size(), with the table of pow(K),
+     *  and return it.  Rather than squaring repeatedly, this walks each
+     *  of my cycles once, pairing each element with the one K places on,
+     *  so it takes time linear in size() whatever K is. */
+    int[] pow(long k, int[] result) {
+        int n = _table.size();
+        Arrays.fill(result, 0, n, -1);
+        for (int i = 0; i < n; i++) {
+            if (result[i] != -1) {
+                continue;
+            }
+            int len = 1;
+            for (int x = _table.forward(i); x != i; x = _table.forward(x)) {
+                len++;
+            }
+            int target = i;
+            for (long s = Math.floorMod(k, (long) len); s > 0; s--) {
+                target = _table.forward(target);
+            }
+            for (int x = i, j = 0; j < len; j++) {
+                result[x] = target;
+                x = _table.forward(x);
+                target = _table.forward(target);
+            }
+        }
+        return result;
+    }
+
+    /** Return my conjugate by a rotation of K places: the permutation
+     *  taking P to permute(P + K) - K, modulo size().  This is the
+     *  permutation performed by a rotor with my wiring at setting K. */
+    Permutation shift(int k) {
+        return new Permutation(shift(k, new int[size()]), _alphabet);
+    }
+
+    /** Fill RESULT, of length at least size(), with the table of
+     *  shift(K), and return it. */
+    int[] shift(int k, int[] result) {
+        int n = _table.size(), off = wrap(k);
+        for (int i = 0, j = off; i < n; i++, j++) {
+            if (j == n) {
+                j = 0;
+            }
+            int v = _table.forward(j) - off;
+            result[i] = v < 0 ? v + n : v;
+        }
+        return result;
+    }
+
+    /** Return my cycles, including those of length 1, each as the
+     *  indices in it in order starting with the least, the cycles in
+     *  order of their least elements. */
+    int[][] cycles() {
+        int n = size();
+        int[] elements = new int[n], starts = new int[n + 1];
+        int count = cycles(elements, starts);
+        int[][] result = new int[count][];
+        for (int c = 0; c < count; c++) {
+            result[c] = Arrays.copyOfRange(elements, starts[c], starts[c + 1]);
+        }
+        return result;
+    }
+
+    /** Write my cycles, in the order of cycles(), one after another into
+     *  ELEMENTS, of length at least size(), and the index in ELEMENTS at
+     *  which cycle #C starts into STARTS[C], followed by size().  STARTS
+     *  must have length at least size() + 1.  Returns the number of
+     *  cycles.  STARTS also marks the indices visited (-1 until then);
+     *  no mark is lost, since cycle #C is found only once index C has
+     *  been examined. */
+    int cycles(int[] elements, int[] starts) {
+        int n = _table.size(), count = 0, pos = 0;
+        Arrays.fill(starts, 0, n, -1);
+        for (int i = 0; i < n; i++) {
+            if (starts[i] != -1) {
+                continue;
+            }
+            starts[count++] = pos;
+            elements[pos++] = i;
+            for (int x = _table.forward(i); x != i; x = _table.forward(x)) {
+                starts[x] = 0;
+                elements[pos++] = x;
+            }
+        }
+        starts[count] = pos;
+        return count;
+    }
+
+    /** Return my cycle type: an array whose element #L is the number of
+     *  my cycles of length L, for 0 <= L <= size().  Two permutations
+     *  of the same size are conjugate (as are a rotor's wiring at any
+     *  two settings) iff their cycle types are equal. */
+    int[] cycleType() {
+        return cycleType(new int[size() + 1]);
+    }
+
+    /** Fill COUNTS, of length at least size() + 1, with my cycle type,
+     *  and return it.  As in cycles(ELEMENTS, STARTS), COUNTS first marks
+     *  the indices visited while collecting the length of each cycle at
+     *  its front; those lengths are then counted in place. */
+    int[] cycleType(int[] counts) {
+        int n = _table.size(), count = 0;
+        Arrays.fill(counts, 0, n + 1, -1);
+        for (int i = 0; i < n; i++) {
+            if (counts[i] != -1) {
+                continue;
+            }
+            int len = 1;
+            for (int x = _table.forward(i); x != i; x = _table.forward(x)) {
+                counts[x] = 0;
+                len++;
+            }
+            counts[count++] = len;
+        }
+        Arrays.fill(counts, count, n + 1, 0);
+        for (int i = 0; i < count; ) {
+            int len = counts[i];
+            if (len <= 0) {
+                i++;
+            } else if (counts[len] > 0) {
+                counts[i] = counts[len];
+                counts[len] = -1;
+            } else {
+                counts[len]--;
+                counts[i] = 0;
+                i++;
+            }
+        }
+        for (int len = 0; len <= n; len++) {
+            counts[len] = -counts[len];
+        }
+        return counts;
+    }
+
+
+    /** Return the table holding FORWARD and its inverse INVERSE from the
+     *  pool of tables, adding one if there is none. */
+    private static Table intern(int[] forward, int[] inverse) {
+        purge();
+        Table table = Table.of(forward, inverse);
+        TableRef ref = new TableRef(table);
+        while (true) {
+            TableRef prior = POOL.putIfAbsent(ref, ref);
+            if (prior == null) {
+                return table;
+            }
+            Table shared = prior.get();
+            if (shared != null) {
+                return shared;
+            }
+            POOL.remove(prior, prior);
+        }
+    }
+
+    /** Remove the entries of tables no longer in use from the pool. */
+    private static void purge() {
+        for (Reference<?> ref = UNUSED.poll(); ref != null;
+             ref = UNUSED.poll()) {
+            POOL.remove(ref, ref);
+        }
+    }
+
+    /** Return true iff OTHER and I share one table, as equal
+     *  permutations do. */
+    boolean sharesTable(Permutation other) {
+        return _table == other._table;
+    }
+
+    /** Return the number of distinct tables in use by permutations. */
+    static int pooled() {
+        purge();
+        return POOL.size();
+    }
+
+    /** A weak reference to a Table that is equal to another exactly when
+     *  they refer to equal tables, or are the same reference. */
+    private static final class TableRef extends WeakReference<Table> {
+
+        /** A reference to TABLE, queued on UNUSED once TABLE is no longer
+         *  in use. */
+        TableRef(Table table) {
+            super(table, UNUSED);
+            _hash = table.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            } else if (!(obj instanceof TableRef)
+                       || ((TableRef) obj)._hash != _hash) {
+                return false;
+            }
+            Table table = get();
+            return table != null && table.equals(((TableRef) obj).get());
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** Hash of the table I refer to. */
+        private final int _hash;
+    }
+
+    /** The forward and inverse tables of a permutation, held one after
+     *  the other in a single array whose element width is chosen once,
+     *  by the subclass made for the number of indices permuted, and
+     *  compared by content. */
+    private abstract static class Table {
+
+        /** A table of SIZE indices whose contents hash to HASH. */
+        Table(int size, int hash) {
+            _size = size;
+            _hash = hash;
+        }
+
+        /** Return the table holding FORWARD and its inverse INVERSE, in
+         *  an array of bytes if there are at most 256 indices, of shorts
+         *  if at most 65536, and of ints otherwise. */
+        static Table of(int[] forward, int[] inverse) {
+            int n = forward.length;
+            if (n <= 1 << 8) {
+                return new ByteTable(forward, inverse);
+            } else if (n <= 1 << 16) {
+                return new ShortTable(forward, inverse);
+            }
+            return new IntTable(forward, inverse);
+        }
+
+        /** Return the number of indices I permute. */
+        final int size() {
+            return _size;
+        }
+
+        /** Return the image of index K. */
+        abstract int forward(int k);
+
+        /** Return the preimage of index K. */
+        abstract int inverse(int k);
+
+        /** Return true iff OTHER, a table of my class, my size and my
+         *  hash, has my contents. */
+        abstract boolean sameContents(Table other);
+
+        @Override
+        public final boolean equals(Object obj) {
+            if (obj == null || obj.getClass() != getClass()) {
+                return false;
+            }
+            Table other = (Table) obj;
+            return _hash == other._hash && _size == other._size
+                && sameContents(other);
+        }
+
+        @Override
+        public final int hashCode() {
+            return _hash;
+        }
+
+        /** Number of indices permuted. */
+        private final int _size;
+        /** Hash of my contents. */
+        private final int _hash;
+    }
+
+    /** A Table of at most 256 indices. */
+    private static final class ByteTable extends Table {
+
+        /** The table holding FORWARD and its inverse INVERSE. */
+        ByteTable(int[] forward, int[] inverse) {
+            this(combine(forward, inverse));
+        }
+
+        /** The table whose combined contents are ENTRIES. */
+        private ByteTable(byte[] entries) {
+            super(entries.length / 2, Arrays.hashCode(entries));
+            _entries = entries;
+        }
+
+        /** Return FORWARD followed by INVERSE, as bytes. */
+        private static byte[] combine(int[] forward, int[] inverse) {
+            int n = forward.length;
+            byte[] entries = new byte[2 * n];
+            for (int i = 0; i < n; i++) {
+                entries[i] = (byte) forward[i];
+                entries[n + i] = (byte) inverse[i];
+            }
+            return entries;
+        }
+
+        @Override
+        int forward(int k) {
+            return _entries[k] & 0xff;
+        }
+
+        @Override
+        int inverse(int k) {
+            return _entries[size() + k] & 0xff;
+        }
+
+        @Override
+        boolean sameContents(Table other) {
+            return Arrays.equals(_entries, ((ByteTable) other)._entries);
+        }
+
+        /** Forward table followed by inverse table. */
+        private final byte[] _entries;
+    }
+
+    /** A Table of more than 256 and at most 65536 indices. */
+    private static final class ShortTable extends Table {
+
+        /** The table holding FORWARD and its inverse INVERSE. */
+        ShortTable(int[] forward, int[] inverse) {
+            this(combine(forward, inverse));
+        }
+
+        /** The table whose combined contents are ENTRIES. */
+        private ShortTable(short[] entries) {
+            super(entries.length / 2, Arrays.hashCode(entries));
+            _entries = entries;
+        }
+
+        /** Return FORWARD followed by INVERSE, as shorts. */
+        private static short[] combine(int[] forward, int[] inverse) {
+            int n = forward.length;
+            short[] entries = new short[2 * n];
+            for (int i = 0; i < n; i++) {
+                entries[i] = (short) forward[i];
+                entries[n + i] = (short) inverse[i];
+            }
+            return entries;
+        }
+
+        @Override
+        int forward(int k) {
+            return _entries[k] & 0xffff;
+        }
+
+        @Override
+        int inverse(int k) {
+            return _entries[size() + k] & 0xffff;
+        }
+
+        @Override
+        boolean sameContents(Table other) {
+            return Arrays.equals(_entries, ((ShortTable) other)._entries);
+        }
+
+        /** Forward table followed by inverse table. */
+        private final short[] _entries;
+    }
+
+    /** A Table of more than 65536 indices. */
+    private static final class IntTable extends Table {
+
+        /** The table holding FORWARD and its inverse INVERSE. */
+        IntTable(int[] forward, int[] inverse) {
+            this(combine(forward, inverse));
+        }
+
+        /** The table whose combined contents are ENTRIES. */
+        private IntTable(int[] entries) {
+            super(entries.length / 2, Arrays.hashCode(entries));
+            _entries = entries;
+        }
+
+        /** Return FORWARD followed by INVERSE. */
+        private static int[] combine(int[] forward, int[] inverse) {
+            int n = forward.length;
+            int[] entries = Arrays.copyOf(forward, 2 * n);
+            System.arraycopy(inverse, 0, entries, n, n);
+            return entries;
+        }
+
+        @Override
+        int forward(int k) {
+            return _entries[k];
+        }
+
+        @Override
+        int inverse(int k) {
+            return _entries[size() + k];
+        }
+
+        @Override
+        boolean sameContents(Table other) {
+            return Arrays.equals(_entries, ((IntTable) other)._entries);
+        }
+
+        /** Forward table followed by inverse table. */
+        private final int[] _entries;
+    }
+
+    /** Weak references to the tables of all permutations in use, each
+     *  mapped to itself.  Entries for tables no longer in use stay until
+     *  purged. */
+    private static final Map<TableRef, TableRef> POOL =
+        new ConcurrentHashMap<>();
+    /** Queue of the references in POOL to tables no longer in use. */
+    private static final ReferenceQueue<Table> UNUSED =
+        new ReferenceQueue<>();
+
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
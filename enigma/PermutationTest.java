@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+import java.util.Random;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -114,6 +116,185 @@ public class PermutationTest {
 
     }
 
+    @Test
+    public void checkCompiledTables() {
+        perm = new Permutation(NAVALA.get("V"), UPPER);
+        checkPerm("Rotor V", UPPER_STRING, NAVALA_MAP.get("V"));
+        assertEquals(perm.permute(25), perm.permute(-1));
+        assertEquals(perm.invert(3), perm.invert(3 + 26));
+    }
+
+    @Test
+    public void checkAlgebra() {
+        Permutation p = new Permutation(NAVALA.get("I"), UPPER);
+        Permutation q = new Permutation(NAVALA.get("II"), UPPER);
+        Permutation pq = p.compose(q);
+        Permutation identity = p.compose(p.inverse());
+        for (int i = 0; i < 26; i += 1) {
+            assertEquals(q.permute(p.permute(i)), pq.permute(i));
+            assertEquals(i, identity.permute(i));
+            assertEquals(p.invert(i), p.inverse().permute(i));
+            assertEquals(p.permute(p.permute(p.permute(i))),
+                         p.pow(3).permute(i));
+            assertEquals(p.invert(p.invert(i)), p.pow(-2).permute(i));
+            assertEquals(i, p.pow(0).permute(i));
+            assertEquals(p.wrap(p.permute(i + 5) - 5),
+                         p.shift(5).permute(i));
+            assertEquals(p.shift(-21).permute(i), p.shift(5).permute(i));
+        }
+        int[] buf = new int[26];
+        assertSame(buf, p.pow(1L << 40, buf));
+        int[] type = p.cycleType();
+        long order = 1;
+        for (int len = 1; len < type.length; len += 1) {
+            if (type[len] > 0) {
+                order = order / gcd(order, len) * len;
+            }
+        }
+        p.pow(order, buf);
+        for (int i = 0; i < 26; i += 1) {
+            assertEquals(i, buf[i]);
+        }
+        assertArrayEquals(type, p.shift(7).cycleType());
+    }
+
+    @Test
+    public void checkCycles() {
+        perm = new Permutation("(BDC) (EF)", new Alphabet("ABCDEF"));
+        int[][] cycles = perm.cycles();
+        assertEquals(3, cycles.length);
+        assertArrayEquals(new int[] { 0 }, cycles[0]);
+        assertArrayEquals(new int[] { 1, 3, 2 }, cycles[1]);
+        assertArrayEquals(new int[] { 4, 5 }, cycles[2]);
+        assertArrayEquals(new int[] { 0, 1, 1, 1, 0, 0, 0 },
+                          perm.cycleType());
+        int[] elements = new int[6], starts = new int[7];
+        assertEquals(3, perm.cycles(elements, starts));
+        assertArrayEquals(new int[] { 0, 1, 3, 2, 4, 5 }, elements);
+        assertEquals(6, starts[3]);
+    }
+
+    @Test
+    public void checkCyclesRandom() {
+        Random rand = new Random(24);
+        String symbols = UPPER_STRING + "abcdefghijklmn";
+        for (int n = 1; n <= symbols.length(); n += 1) {
+            Alphabet alpha = new Alphabet(symbols.substring(0, n));
+            int[] forward = new int[alpha.size()];
+            for (int i = 0; i < forward.length; i += 1) {
+                int j = rand.nextInt(i + 1);
+                forward[i] = forward[j];
+                forward[j] = i;
+            }
+            perm = new Permutation(forward, alpha);
+            int size = alpha.size();
+            int[] type = new int[size + 1];
+            int[][] cycles = perm.cycles();
+            int total = 0;
+            for (int[] cycle : cycles) {
+                type[cycle.length] += 1;
+                total += cycle.length;
+                for (int k = 0; k < cycle.length; k += 1) {
+                    assertEquals(cycle[(k + 1) % cycle.length],
+                                 perm.permute(cycle[k]));
+                }
+            }
+            assertEquals(size, total);
+            assertArrayEquals(type, perm.cycleType(new int[size + 1]));
+        }
+    }
+
+    @Test
+    public void checkInterning() {
+        Permutation a = new Permutation("(AB) (CD)", UPPER);
+        Permutation id = a.compose(a);
+        int pooled = Permutation.pooled();
+        Permutation b = new Permutation("(DC)(BA)", UPPER);
+        Permutation c = id.compose(a);
+        Permutation d = a.pow(3);
+        Permutation e = b.inverse().compose(b);
+        assertTrue(a.sharesTable(b));
+        assertTrue(a.sharesTable(c));
+        assertTrue(a.sharesTable(d));
+        assertTrue(id.sharesTable(e));
+        assertFalse(a.sharesTable(id));
+        assertTrue(Permutation.pooled() <= pooled);
+        for (int i = 0; i < 26; i += 1) {
+            assertEquals(a.permute(i), b.permute(i));
+            assertEquals(i, e.permute(i));
+        }
+    }
+
+    @Test
+    public void checkWideTables() {
+        for (int n : new int[] { 256, 257, 65536, 65537 }) {
+            StringBuilder symbols = new StringBuilder();
+            for (int i = 0; i < n; i += 1) {
+                symbols.appendCodePoint(0x10000 + i);
+            }
+            Alphabet wide = new Alphabet(symbols.toString());
+            int[] forward = new int[n];
+            for (int i = 0; i < n; i += 1) {
+                forward[i] = (int) ((7L * i + 3) % n);
+            }
+            perm = new Permutation(forward, wide);
+            for (int i = 0; i < n; i += n / 16) {
+                assertEquals(forward[i], perm.permute(i));
+                assertEquals(i, perm.invert(forward[i]));
+            }
+            assertEquals(n - 1, perm.invert(forward[n - 1]));
+        }
+    }
+
+    /** Return the greatest common divisor of A and B. */
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBadCycleChar() {
+        new Permutation("(AB1)", UPPER);
+    }
+
+    @Test
+    public void checkRepeatedCycleChar() {
+        for (String cycles : new String[] { "(AB) (AC)", "(ABA)", "(A)(A)",
+                                            "(A B)" }) {
+            try {
+                new Permutation(cycles, UPPER);
+                fail("accepted " + cycles);
+            } catch (EnigmaException excp) {
+                continue;
+            }
+        }
+        perm = new Permutation(" ( AB )  (CD)", UPPER);
+        assertEquals(1, perm.permute(0));
+    }
+
+    @Test
+    public void checkBadTables() {
+        Alphabet abc = new Alphabet("ABC");
+        int[][][] bad = {
+            { {1, 0} }, { {1, 2, 0, 3} }, { {0, 3, 1} }, { {0, -1, 2} },
+            { {0, 1, 1} }, { {1, 2, 0}, {1, 2, 0} }, { {1, 2, 0}, {2, 0} },
+            { {1, 2, 0}, {2, 0, 3} },
+        };
+        for (int[][] tables : bad) {
+            try {
+                if (tables.length == 1) {
+                    new Permutation(tables[0], abc);
+                } else {
+                    new Permutation(tables[0], tables[1], abc);
+                }
+                fail("accepted " + Arrays.deepToString(tables));
+            } catch (EnigmaException excp) {
+                continue;
+            }
+        }
+        perm = new Permutation(new int[] {1, 2, 0}, new int[] {2, 0, 1}, abc);
+        assertEquals(2, perm.permute(1));
+    }
+
     @Test
     public void testAlphContains() {
         Alphabet alphT = new Alphabet("ABCDEF");
@@ -140,6 +321,31 @@ public class PermutationTest {
         assertEquals(4, alphT.toInt('E'));
     }
 
+    @Test
+    public void testAlphSupplementary() {
+        StringBuilder chars = new StringBuilder();
+        for (int cp = 0x1F600; cp < 0x1F600 + 3000; cp += 1) {
+            chars.appendCodePoint(cp);
+        }
+        Alphabet alphT = new Alphabet(chars.toString());
+        assertEquals(3000, alphT.size());
+        assertEquals(0, alphT.codePointToInt(0x1F600));
+        assertEquals(2999, alphT.codePointToInt(0x1F600 + 2999));
+        assertEquals(0x1F600 + 17, alphT.toCodePoint(17));
+        assertFalse(alphT.containsCodePoint('A'));
+        assertEquals(-1, alphT.toInt('A'));
+        try {
+            alphT.toChar(17);
+            fail("supplementary symbol returned as a char");
+        } catch (EnigmaException excp) {
+            assertEquals("symbol U+1F611 is not a single character",
+                         excp.getMessage());
+        }
+    }
 
+    @Test(expected = EnigmaException.class)
+    public void testAlphDuplicate() {
+        new Alphabet("ABCA");
+    }
 
 }
@@ -0,0 +1,270 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/** Processes a message input in three overlapping stages: a reader thread
+ *  that splits the input into settings lines and message text, a
+ *  converter thread that sets up and runs the machine, and a writer (the
+ *  calling thread) that groups and writes the output.  The stages hand
+ *  each other preallocated blocks around a single bounded ring; each
+ *  stage owns the blocks between its cursor and that of the stage before
+ *  it, so each hand-off is single-producer/single-consumer and a full
+ *  ring holds the reader back.  Output order is input order, and an
+ *  error is reported only after the output that precedes it.
+ *  @author Nathan Mehta
+ */
+class Pipeline {
+
+    /** Number of blocks in the ring (a power of 2). */
+    static final int RING_SIZE = 64;
+
+    /** A pipeline that reads INPUT, hands settings lines to SETUP and
+     *  converts message text with MACHINE, and groups and writes the
+     *  results with CODEC. */
+    Pipeline(Reader input, Machine machine, LineCodec codec,
+             Consumer<String> setUp) {
+        _input = input;
+        _machine = machine;
+        _codec = codec;
+        _setUp = setUp;
+        _blockText = machine.alphabet().wide() ? LineCodec.BUFFER_SIZE / 2
+            : LineCodec.BUFFER_SIZE;
+        for (int i = 0; i < RING_SIZE; i += 1) {
+            _ring[i] = new Block();
+        }
+    }
+
+    /** Process all of my input, returning when the output has been
+     *  written, and rethrowing any error from any stage, including
+     *  Errors, which are passed on to the writer like any other. */
+    void run() throws IOException {
+        Thread reader = new Thread(this::readStage, "enigma-reader");
+        Thread converter = new Thread(this::convertStage, "enigma-converter");
+        reader.setDaemon(true);
+        converter.setDaemon(true);
+        reader.start();
+        converter.start();
+        try {
+            writeStage();
+        } finally {
+            _aborted = true;
+        }
+    }
+
+    /** Kinds of Block. */
+    private static final int TEXT = 0, END_LINE = 1, SETTINGS = 2,
+        END = 3, FAILED = 4;
+
+    /** A unit of work passed between stages. */
+    private static class Block {
+        /** One of TEXT, END_LINE, SETTINGS, END, FAILED. */
+        private int kind;
+        /** Message text, for TEXT blocks. */
+        private final char[] text = new char[LineCodec.BUFFER_SIZE];
+        /** Number of characters in text. */
+        private int length;
+        /** The settings line, for SETTINGS blocks. */
+        private String settings;
+        /** The error, for FAILED blocks. */
+        private Throwable error;
+    }
+
+    /** Reader stage: split the input into blocks. */
+    private void readStage() {
+        try {
+            Main.splitLines(_input, new MessageSink() {
+                @Override
+                public void settings(String line) {
+                    Block block = claim();
+                    block.kind = SETTINGS;
+                    block.settings = line;
+                    publish();
+                }
+
+                @Override
+                public void text(char[] buf, int off, int len) {
+                    while (len > 0) {
+                        Block block = claim();
+                        int n = Math.min(len, _blockText);
+                        if (n < len
+                            && Character.isHighSurrogate(buf[off + n - 1])) {
+                            n -= 1;
+                        }
+                        System.arraycopy(buf, off, block.text, 0, n);
+                        block.kind = TEXT;
+                        block.length = n;
+                        publish();
+                        off += n;
+                        len -= n;
+                    }
+                }
+
+                @Override
+                public void endLine() {
+                    claim().kind = END_LINE;
+                    publish();
+                }
+            });
+            claim().kind = END;
+            publish();
+        } catch (Aborted excp) {
+            return;
+        } catch (Throwable excp) {
+            fail(excp);
+        }
+    }
+
+    /** Hand EXCP, the error that stopped the reader, on to the writer.
+     *  If the writer has already stopped, so that no block can be
+     *  claimed, rethrow EXCP instead (an IOException wrapped in an
+     *  UncheckedIOException). */
+    private void fail(Throwable excp) {
+        Block block;
+        try {
+            block = claim();
+        } catch (Aborted aborted) {
+            if (excp instanceof Error) {
+                throw (Error) excp;
+            } else if (excp instanceof RuntimeException) {
+                throw (RuntimeException) excp;
+            }
+            throw new UncheckedIOException((IOException) excp);
+        }
+        block.kind = FAILED;
+        block.error = excp;
+        publish();
+    }
+
+    /** Converter stage: apply settings lines and convert message text. */
+    private void convertStage() {
+        long mark = Metrics.global().allocationMark();
+        try {
+            for (long seq = 0; ; seq += 1) {
+                await(_read, seq + 1);
+                Block block = _ring[(int) seq & MASK];
+                try {
+                    if (block.kind == SETTINGS) {
+                        _setUp.accept(block.settings);
+                    } else if (block.kind == TEXT) {
+                        int n = _codec.normalize(block.text, 0, block.length);
+                        block.length =
+                            _machine.convert(block.text, 0, n, block.text, 0);
+                    }
+                } catch (Throwable excp) {
+                    block.kind = FAILED;
+                    block.error = excp;
+                }
+                int kind = block.kind;
+                _converted.lazySet(seq + 1);
+                if (kind == END || kind == FAILED) {
+                    return;
+                }
+            }
+        } catch (Aborted excp) {
+            return;
+        } finally {
+            Metrics.global().allocated(mark);
+        }
+    }
+
+    /** Writer stage: write converted blocks in order. */
+    private void writeStage() throws IOException {
+        for (long seq = 0; ; seq += 1) {
+            await(_converted, seq + 1);
+            Block block = _ring[(int) seq & MASK];
+            switch (block.kind) {
+            case TEXT:
+                _codec.writeConverted(block.text, 0, block.length);
+                break;
+            case END_LINE:
+                _codec.endLine();
+                break;
+            case END:
+                return;
+            case FAILED:
+                if (block.error instanceof IOException) {
+                    throw (IOException) block.error;
+                } else if (block.error instanceof Error) {
+                    throw (Error) block.error;
+                }
+                throw (RuntimeException) block.error;
+            default:
+                break;
+            }
+            block.settings = null;
+            _written.lazySet(seq + 1);
+        }
+    }
+
+    /** Return the next free block for the reader, waiting for the writer
+     *  to release one if the ring is full. */
+    private Block claim() {
+        await(_written, _claimed - RING_SIZE + 1);
+        return _ring[(int) _claimed & MASK];
+    }
+
+    /** Hand the block last claimed to the converter. */
+    private void publish() {
+        _claimed += 1;
+        _read.lazySet(_claimed);
+    }
+
+    /** Wait until SEQ reaches TARGET, spinning briefly and then parking.
+     *  Throws Aborted if the pipeline has been abandoned. */
+    private void await(AtomicLong seq, long target) {
+        for (int spins = 0; seq.get() < target; spins += 1) {
+            if (_aborted) {
+                throw new Aborted();
+            } else if (spins < SPIN_LIMIT) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    }
+
+    /** Thrown to unwind a stage once the pipeline is abandoned. */
+    private static class Aborted extends RuntimeException {
+        /** An Aborted without a stack trace. */
+        Aborted() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** Mask for ring indices. */
+    private static final int MASK = RING_SIZE - 1;
+    /** Busy-wait iterations before a waiting stage parks. */
+    private static final int SPIN_LIMIT = 1 << 10;
+    /** Nanoseconds a waiting stage parks between checks. */
+    private static final long PARK_NANOS = 20_000;
+
+    /** Source of messages. */
+    private final Reader _input;
+    /** Machine that converts messages. */
+    private final Machine _machine;
+    /** Normalizes, groups and writes messages. */
+    private final LineCodec _codec;
+    /** Applies settings lines to _machine. */
+    private final Consumer<String> _setUp;
+    /** Most message characters the reader puts in a block: all of its
+     *  text buffer, or half of it if _machine's alphabet is wide(), since
+     *  the converter converts in place and a code point may grow. */
+    private final int _blockText;
+    /** The preallocated blocks. */
+    private final Block[] _ring = new Block[RING_SIZE];
+    /** Number of blocks claimed by the reader (reader thread only). */
+    private long _claimed;
+    /** Number of blocks published by the reader. */
+    private final AtomicLong _read = new AtomicLong();
+    /** Number of blocks passed on by the converter. */
+    private final AtomicLong _converted = new AtomicLong();
+    /** Number of blocks released by the writer. */
+    private final AtomicLong _written = new AtomicLong();
+    /** True once the writer has stopped. */
+    private volatile boolean _aborted;
+}
@@ -0,0 +1,166 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Return a machine with the naval rotors B, Beta, III, IV and I. */
+    private Machine machine() {
+        return TestUtils.navalMachine(AZ, "AAAA", "(HQ) (EX)");
+    }
+
+    /** Return an input of settings lines of the form "* SSSS" followed
+     *  by message lines, some much longer than a block. */
+    private String input() {
+        Random rand = new Random(12);
+        StringBuilder text = new StringBuilder();
+        for (int section = 0; section < 20; section += 1) {
+            text.append("* ");
+            for (int i = 0; i < 4; i += 1) {
+                text.append(AZ.toChar(rand.nextInt(26)));
+            }
+            text.append("\n");
+            for (int line = rand.nextInt(4); line > 0; line -= 1) {
+                int len = rand.nextInt(3) == 0 ? 30000 : rand.nextInt(40);
+                for (int i = 0; i < len; i += 1) {
+                    char ch = AZ.toChar(rand.nextInt(26));
+                    text.append(i % 7 == 3 ? ' ' : ch);
+                }
+                text.append(line % 2 == 0 ? "\r\n" : "\n");
+            }
+        }
+        return text.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesSequential() throws IOException {
+        String text = input();
+        Machine seqMach = machine();
+        StringWriter expected = new StringWriter();
+        LineCodec seqCodec = new LineCodec(seqMach, expected);
+        Main.splitLines(new StringReader(text), new MessageSink() {
+            @Override
+            public void settings(String line) {
+                seqMach.setRotors(line.substring(2));
+            }
+
+            @Override
+            public void text(char[] buf, int off, int len)
+                throws IOException {
+                seqCodec.write(buf, off, len);
+            }
+
+            @Override
+            public void endLine() throws IOException {
+                seqCodec.endLine();
+            }
+        });
+        seqCodec.flush();
+
+        Machine mach = machine();
+        StringWriter out = new StringWriter();
+        LineCodec codec = new LineCodec(mach, out);
+        new Pipeline(new StringReader(text), mach, codec,
+                     line -> mach.setRotors(line.substring(2))).run();
+        codec.flush();
+        assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test
+    public void testErrorAfterOutput() throws IOException {
+        Machine mach = machine();
+        StringWriter out = new StringWriter();
+        LineCodec codec = new LineCodec(mach, out);
+        try {
+            new Pipeline(new StringReader("* AXLE\nABC\n* AXL\nDEF\n"),
+                         mach, codec,
+                         line -> mach.setRotors(line.substring(2))).run();
+            fail("expected an error");
+        } catch (EnigmaException excp) {
+            codec.flush();
+            assertEquals(3 + System.lineSeparator().length(),
+                         out.toString().length());
+        }
+    }
+
+    @Test
+    public void testErrorInStage() throws IOException {
+        Machine mach = machine();
+        LineCodec codec = new LineCodec(mach, new StringWriter());
+        try {
+            new Pipeline(new StringReader("* AXLE\nABC\n"), mach, codec,
+                         line -> {
+                             throw new AssertionError("setting up");
+                         }).run();
+            fail("expected an error");
+        } catch (AssertionError excp) {
+            assertEquals("setting up", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testReadErrorAfterWriterStops() throws Exception {
+        String lines = "* AXLE\n" + "\n".repeat(Pipeline.RING_SIZE - 1);
+        Reader input = new Reader() {
+            @Override
+            public int read(char[] buf, int off, int len) throws IOException {
+                if (_done) {
+                    throw new IOException("late");
+                }
+                _done = true;
+                lines.getChars(0, lines.length(), buf, off);
+                return lines.length();
+            }
+
+            @Override
+            public void close() {
+            }
+
+            private boolean _done;
+        };
+        CompletableFuture<Throwable> uncaught = new CompletableFuture<>();
+        Thread.UncaughtExceptionHandler handler =
+            Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(
+            (thread, excp) -> uncaught.complete(excp));
+        try {
+            Machine mach = machine();
+            LineCodec codec = new LineCodec(mach, new StringWriter());
+            new Pipeline(input, mach, codec, line -> {
+                throw new EnigmaException("bad settings");
+            }).run();
+            fail("expected an error");
+        } catch (EnigmaException excp) {
+            assertEquals("bad settings", excp.getMessage());
+            Throwable late = uncaught.get(2, TimeUnit.SECONDS);
+            assertTrue(late instanceof UncheckedIOException);
+            assertEquals("late", late.getCause().getMessage());
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package enigma;
+
+/** A MachineCursor that records each conversion it makes as an event
+ *  of a TraceRecorder.  An event holds the number of steps taken since
+ *  the settings were last set, the rotor settings after stepping (slots
+ *  1 and up), and the character index on input, after the plugboard,
+ *  after each rotor in turn, and after the plugboard again: the same
+ *  information --verbose prints, unformatted.
+ *  @author Nathan Mehta
+ */
+class RecordingCursor extends MachineCursor {
+
+    /** A cursor on SPEC with rotor settings POSNS, indexed by slot, that
+     *  records its conversions with RECORDER. */
+    RecordingCursor(MachineSpec spec, int[] posns, TraceRecorder recorder) {
+        super(spec, posns);
+        _recorder = recorder;
+        _event = new int[3 * spec.numRotors() + 1];
+    }
+
+    @Override
+    int convert(int c) {
+        step();
+        _steps += 1;
+        MachineSpec spec = spec();
+        int n = spec.numRotors();
+        int k = 0;
+        for (int r = 1; r < n; r += 1) {
+            _event[k++] = setting(r);
+        }
+        _event[k++] = c;
+        c = spec.plugboard().permute(c);
+        _event[k++] = c;
+        for (int r = n - 1; r >= 0; r -= 1) {
+            c = spec.rotor(r).convertForward(c, setting(r));
+            _event[k++] = c;
+        }
+        for (int r = 1; r < n; r += 1) {
+            c = spec.rotor(r).convertBackward(c, setting(r));
+            _event[k++] = c;
+        }
+        c = spec.plugboard().permute(c);
+        _event[k++] = c;
+        _recorder.record(_steps, _event, k);
+        return c;
+    }
+
+    @Override
+    void set(int[] posns) {
+        super.set(posns);
+        _steps = 0;
+    }
+
+    @Override
+    void advance(long n) {
+        super.advance(n);
+        _steps += n;
+    }
+
+    /** Receives my events. */
+    private final TraceRecorder _recorder;
+    /** The event being built. */
+    private final int[] _event;
+    /** Steps taken since my settings were last set. */
+    private long _steps;
+}
@@ -64,25 +64,30 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int addedSettingInt = permutation().wrap(p + setting());
+        return convertForward(p, setting());
+    }
+
+    /** Return the conversion of P (an integer in the range 0..size()-1)
+     *  according to my permutation, were I at setting POSN. */
+    int convertForward(int p, int posn) {
+        int addedSettingInt = permutation().wrap(p + posn);
         int permuted = permutation().permute(addedSettingInt);
-        int result = permutation().wrap(permuted - setting());
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
-        }
-        return result;
+        return permutation().wrap(permuted - posn);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int addedSettingInt = permutation().wrap(e + setting());
+        return convertBackward(e, setting());
+    }
+
+    /** Return the conversion of E (an integer in the range 0..size()-1)
+     *  according to the inverse of my permutation, were I at setting
+     *  POSN. */
+    int convertBackward(int e, int posn) {
+        int addedSettingInt = permutation().wrap(e + posn);
         int inverted = permutation().invert(addedSettingInt);
-        int result = permutation().wrap(inverted - setting());
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
-        }
-        return result;
+        return permutation().wrap(inverted - posn);
     }
 
     /** Returns the positions of the notches, as a string giving the letters
@@ -91,14 +96,24 @@ class Rotor {
         return "";
     }
 
+    /** Return my notch positions as a bit mask: bit Q % 64 of word
+     *  Q / 64 is set iff I have a notch at position Q.  The mask may be
+     *  shared, and must not be modified. */
+    long[] notchMask() {
+        return new long[(size() + 63) >>> 6];
+    }
+
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
-        for (int i = 0; i < notches().length(); i++) {
-            if ((alphabet().toInt(notches().charAt(i))) == setting()) {
-                return true;
-            }
-        } return false;
+        return atNotch(setting());
+    }
+
+    /** Returns true iff I would allow the rotor to my left to advance
+     *  were I at setting POSN. */
+    boolean atNotch(int posn) {
+        return notches().codePoints()
+            .anyMatch(cp -> alphabet().codePointToInt(cp) == posn);
     }
 
     /** Advance me one position, if possible. By default, does nothing. */
@@ -0,0 +1,75 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/** The rotors available to a configuration, looked up by name.  A
+ *  catalog read from a configuration file holds only the offset in the
+ *  file of each rotor's description; the rotor is compiled from it the
+ *  first time it is asked for and kept for later requests, so that the
+ *  work and memory spent on a catalog of thousands of rotors depend on
+ *  the rotors actually used.  Any number of threads may use a catalog
+ *  at once.  Where two rotors have the same name, the later one wins.
+ *  @author Nathan Mehta
+ */
+class RotorCatalog {
+
+    /** A catalog of the rotors described at OFFSETS, which maps each
+     *  name to its offset in file order, compiling the rotor at offset
+     *  K as COMPILER.apply(K). */
+    RotorCatalog(Map<String, Integer> offsets, IntFunction<Rotor> compiler) {
+        _offsets = offsets;
+        _compiler = compiler;
+    }
+
+    /** A catalog of ROTORS, already compiled. */
+    RotorCatalog(Collection<Rotor> rotors) {
+        List<Rotor> list = new ArrayList<>(rotors);
+        _offsets = new LinkedHashMap<>();
+        for (int i = 0; i < list.size(); i += 1) {
+            _offsets.put(list.get(i).name(), i);
+        }
+        _compiler = list::get;
+    }
+
+    /** Return the rotor named NAME, or null if there is none. */
+    Rotor get(String name) {
+        Integer offset = _offsets.get(name);
+        if (offset == null) {
+            return null;
+        }
+        return _compiled.computeIfAbsent(name,
+                                         k -> _compiler.apply(offset));
+    }
+
+    /** Return all my rotors, in the order of their descriptions. */
+    List<Rotor> all() {
+        List<Rotor> result = new ArrayList<>();
+        for (String name : _offsets.keySet()) {
+            result.add(get(name));
+        }
+        return result;
+    }
+
+    /** Return the number of rotors I hold. */
+    int size() {
+        return _offsets.size();
+    }
+
+    /** Return the number of my rotors compiled so far. */
+    int compiled() {
+        return _compiled.size();
+    }
+
+    /** Offset of the description of each rotor, by name. */
+    private final Map<String, Integer> _offsets;
+    /** Compiles the rotor described at a given offset. */
+    private final IntFunction<Rotor> _compiler;
+    /** The rotors compiled so far, by name. */
+    private final Map<String, Rotor> _compiled = new ConcurrentHashMap<>();
+}
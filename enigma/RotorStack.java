@@ -0,0 +1,153 @@
+package enigma;
+
+/** The rotors of a machine, with the reflector and the slow rotors folded
+ *  into a single table.  The slow rotors (every slot but the reflector and
+ *  the fast rotor) sit at the leaves of a segment tree whose nodes hold the
+ *  composite forward and inverse tables of their range, so that moving one
+ *  rotor rebuilds only the nodes above it.  Between notch events only the
+ *  fast rotor moves and nothing is rebuilt.
+ *  @author Nathan Mehta
+ */
+class RotorStack {
+
+    /** A stack for the rotors in SLOTS, where SLOTS[0] is the reflector
+     *  and SLOTS[SLOTS.length - 1] is the fast rotor, whose settings are
+     *  given by POSNS (indexed by slot). */
+    RotorStack(Rotor[] slots, int[] posns) {
+        _slots = slots;
+        _posns = posns;
+        _size = slots[0].size();
+        _numSlow = Math.max(0, slots.length - 2);
+        _fast = slots.length > 1 ? slots[slots.length - 1] : null;
+        _leaves = 1;
+        while (_leaves < _numSlow) {
+            _leaves *= 2;
+        }
+        _fwd = new int[2 * _leaves][];
+        _inv = new int[2 * _leaves][];
+        for (int i = 1; i < 2 * _leaves; i += 1) {
+            _fwd[i] = identity();
+            _inv[i] = identity();
+        }
+        _nodeDirty = new boolean[2 * _leaves];
+        _core = new int[_size];
+        reset();
+    }
+
+    /** Record that the rotor in slot K has changed its setting. */
+    void moved(int k) {
+        if (k < _slots.length - 1) {
+            if (k > 0) {
+                _nodeDirty[_leaves + k - 1] = true;
+            }
+            _dirty = true;
+        }
+    }
+
+    /** Record that the rotors in slot K and above may have changed their
+     *  settings. */
+    void movedFrom(int k) {
+        for (; k < _slots.length - 1; k += 1) {
+            moved(k);
+        }
+    }
+
+    /** Record that any rotor may have changed its setting. */
+    void reset() {
+        movedFrom(0);
+    }
+
+    /** Return the result of passing C (an index in the range
+     *  0..size - 1) through every rotor up to the reflector and back. */
+    int apply(int c) {
+        if (_dirty) {
+            rebuild();
+        }
+        if (_fast == null) {
+            return _core[c];
+        }
+        Permutation perm = _fast.permutation();
+        int s = _posns[_slots.length - 1];
+        int x = perm.wrap(perm.permute(c + s) - s);
+        x = _core[x];
+        return perm.wrap(perm.invert(x + s) - s);
+    }
+
+    /** Recompute the dirty leaves, their ancestors, and the core table. */
+    private void rebuild() {
+        for (int k = 1; k <= _numSlow; k += 1) {
+            int leaf = _leaves + k - 1;
+            if (_nodeDirty[leaf]) {
+                fillLeaf(_slots[k], _posns[k], _fwd[leaf], _inv[leaf]);
+                _nodeDirty[leaf] = false;
+                _nodeDirty[leaf / 2] = true;
+            }
+        }
+        for (int n = _leaves - 1; n >= 1; n -= 1) {
+            if (_nodeDirty[n]) {
+                int[] lf = _fwd[2 * n], rf = _fwd[2 * n + 1];
+                int[] li = _inv[2 * n], ri = _inv[2 * n + 1];
+                int[] nf = _fwd[n], ni = _inv[n];
+                for (int x = 0; x < _size; x += 1) {
+                    nf[x] = lf[rf[x]];
+                    ni[x] = ri[li[x]];
+                }
+                _nodeDirty[n] = false;
+                _nodeDirty[n / 2] = true;
+            }
+        }
+        Rotor refl = _slots[0];
+        Permutation perm = refl.permutation();
+        int s = _posns[0];
+        int[] rootF = _fwd[1], rootI = _inv[1];
+        for (int x = 0; x < _size; x += 1) {
+            int y = perm.wrap(perm.permute(rootF[x] + s) - s);
+            _core[x] = rootI[y];
+        }
+        _nodeDirty[0] = false;
+        _dirty = false;
+    }
+
+    /** Fill FWD and INV with the forward and inverse conversions of ROTOR
+     *  at setting S. */
+    private void fillLeaf(Rotor rotor, int s, int[] fwd, int[] inv) {
+        Permutation perm = rotor.permutation();
+        for (int x = 0; x < _size; x += 1) {
+            int y = perm.wrap(perm.permute(x + s) - s);
+            fwd[x] = y;
+            inv[y] = x;
+        }
+    }
+
+    /** Return a new identity table. */
+    private int[] identity() {
+        int[] result = new int[_size];
+        for (int x = 0; x < _size; x += 1) {
+            result[x] = x;
+        }
+        return result;
+    }
+
+    /** Rotors in slot order, reflector first. */
+    private final Rotor[] _slots;
+    /** Settings of _slots. */
+    private final int[] _posns;
+    /** Alphabet size. */
+    private final int _size;
+    /** Number of slow rotors (slots 1 .. _numSlow). */
+    private final int _numSlow;
+    /** The fast rotor, or null if there is only a reflector. */
+    private final Rotor _fast;
+    /** Number of leaves in the segment tree (a power of 2). */
+    private int _leaves;
+    /** Composite forward tables, indexed by tree node (root is 1). */
+    private final int[][] _fwd;
+    /** Composite inverse tables, indexed by tree node. */
+    private final int[][] _inv;
+    /** Nodes whose tables are stale. */
+    private final boolean[] _nodeDirty;
+    /** Slow rotors, reflector, and slow rotors again, in one table. */
+    private final int[] _core;
+    /** True iff _core is stale. */
+    private boolean _dirty;
+}
@@ -0,0 +1,256 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static enigma.EnigmaException.*;
+
+/** Processes a message input as a series of independent sections, each a
+ *  settings line and the message lines up to the next one.  Since every
+ *  settings line sets the machine up from scratch, the sections are
+ *  converted concurrently, each on its own Machine, one task per section.
+ *  Tasks run on virtual threads where the platform has them and on a
+ *  pool of platform threads otherwise.  Output order is input order, and
+ *  an error is reported only after the output that precedes it.  Each
+ *  section is held in memory whole, so this suits inputs of many short
+ *  sections.
+ *  @author Nathan Mehta
+ */
+class Sections {
+
+    /** Largest number of sections read ahead of the output. */
+    static final int MAX_PENDING =
+        Math.max(256, 4 * Runtime.getRuntime().availableProcessors());
+
+    /** Sections of INPUT, each converted by the new Machine that SETUP
+     *  returns for its settings line, with message text normalized as
+     *  given by CASEMODE and INVALID (see LineCodec). */
+    Sections(Reader input, Function<String, Machine> setUp,
+             LineCodec.Case caseMode, LineCodec.Invalid invalid) {
+        _input = input;
+        _setUp = setUp;
+        _case = caseMode;
+        _invalid = invalid;
+    }
+
+    /** Process all of my input, writing the converted sections to OUT in
+     *  order, and rethrowing the first error in input order. */
+    void run(Writer out) throws IOException {
+        ExecutorService executor = newExecutor();
+        Splitter splitter = new Splitter(executor, out);
+        try {
+            try {
+                Main.splitLines(_input, splitter);
+            } catch (IOException | RuntimeException excp) {
+                if (splitter._failure == null) {
+                    splitter.finish(excp);
+                }
+                throw excp;
+            }
+            splitter.finish(null);
+        } finally {
+            for (Future<Result> section : splitter._pending) {
+                section.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    /** Collects the sections of my input and submits them for
+     *  conversion. */
+    private class Splitter implements MessageSink {
+
+        /** A Splitter submitting sections to EXECUTOR and writing them to
+         *  OUT when too many are pending. */
+        Splitter(ExecutorService executor, Writer out) {
+            _executor = executor;
+            _out = out;
+        }
+
+        @Override
+        public void settings(String line) throws IOException {
+            submit();
+            _settings = line;
+        }
+
+        @Override
+        public void text(char[] buf, int off, int len) {
+            _text.append(buf, off, len);
+        }
+
+        @Override
+        public void endLine() {
+            _text.append('\n');
+        }
+
+        /** Hand the section read so far to _executor, first writing the
+         *  oldest pending section if there are too many. */
+        void submit() throws IOException {
+            if (_settings == null) {
+                return;
+            }
+            if (_pending.size() == MAX_PENDING) {
+                try {
+                    write(_pending.removeFirst(), _out);
+                } catch (IOException | RuntimeException excp) {
+                    _failure = excp;
+                    throw excp;
+                }
+            }
+            String settings = _settings;
+            String text = _text.toString();
+            _pending.addLast(_executor.submit(() -> convert(settings, text)));
+            _settings = null;
+            _text.setLength(0);
+        }
+
+        /** Submit the section being read, if any, and write all pending
+         *  sections.  CAUSE, if not null, is the error that ended the
+         *  input early; it is attached as suppressed to any error in a
+         *  section that precedes it. */
+        void finish(Exception cause) throws IOException {
+            try {
+                submit();
+                while (!_pending.isEmpty()) {
+                    write(_pending.removeFirst(), _out);
+                }
+            } catch (IOException | RuntimeException excp) {
+                if (cause != null) {
+                    excp.addSuppressed(cause);
+                }
+                throw excp;
+            }
+        }
+
+        /** Runs conversions. */
+        private final ExecutorService _executor;
+        /** Destination of converted sections. */
+        private final Writer _out;
+        /** Sections submitted and not yet written, oldest first. */
+        private final ArrayDeque<Future<Result>> _pending =
+            new ArrayDeque<>();
+        /** The error in writing a pending section, after which nothing
+         *  further may be written, or null. */
+        private Exception _failure;
+        /** Settings line of the section being read, or null. */
+        private String _settings;
+        /** Message lines of the section being read, each ended by a
+         *  newline. */
+        private final StringBuilder _text = new StringBuilder();
+    }
+
+    /** The output of a section, and the error that cut it short, if any. */
+    private static class Result {
+        /** Converted text. */
+        private String output;
+        /** The error, or null. */
+        private RuntimeException error;
+    }
+
+    /** Return the result of converting the message lines TEXT (each ended
+     *  by a newline, except perhaps the last, which the input cut short)
+     *  on a new Machine set up by SETTINGS. */
+    private Result convert(String settings, String text) throws IOException {
+        long began = System.nanoTime();
+        long mark = Metrics.global().allocationMark();
+        Result result = new Result();
+        StringWriter out = new StringWriter();
+        LineCodec codec = null;
+        try {
+            char[] chars = text.toCharArray();
+            int size = Math.min(LineCodec.BUFFER_SIZE, chars.length + 1);
+            codec = new LineCodec(_setUp.apply(settings), out,
+                                  _case, _invalid, size);
+            int start = 0;
+            for (int end = 0; end < chars.length; end += 1) {
+                if (chars[end] == '\n') {
+                    codec.write(chars, start, end - start);
+                    codec.endLine();
+                    start = end + 1;
+                }
+            }
+            codec.write(chars, start, chars.length - start);
+        } catch (RuntimeException excp) {
+            result.error = excp;
+        }
+        if (codec != null) {
+            codec.flush();
+        }
+        result.output = out.toString();
+        Metrics.global().allocated(mark);
+        Metrics.global().section(System.nanoTime() - began);
+        return result;
+    }
+
+    /** Write the output of SECTION to OUT once it is done, then rethrow
+     *  its error, if any. */
+    private static void write(Future<Result> section, Writer out)
+        throws IOException {
+        Result result;
+        try {
+            result = section.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+        out.write(result.output);
+        if (result.error != null) {
+            throw result.error;
+        }
+    }
+
+    /** Return an executor that runs each task on a new virtual thread, or,
+     *  where those are unavailable, on a pool of daemon platform threads,
+     *  one per processor. */
+    static ExecutorService newExecutor() {
+        ExecutorService executor = newVirtualExecutor();
+        if (executor != null) {
+            return executor;
+        }
+        return Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            task -> {
+                Thread thread = new Thread(task, "enigma-section");
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /** Return an executor that runs each task on a new virtual thread, or
+     *  null if the platform has none. */
+    static ExecutorService newVirtualExecutor() {
+        try {
+            Method factory =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return null;
+        }
+    }
+
+    /** Source of messages. */
+    private final Reader _input;
+    /** Returns a new Machine set up by a settings line. */
+    private final Function<String, Machine> _setUp;
+    /** Case folding. */
+    private final LineCodec.Case _case;
+    /** Treatment of characters outside the alphabet. */
+    private final LineCodec.Invalid _invalid;
+}
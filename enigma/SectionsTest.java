@@ -0,0 +1,127 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Sections class.
+ *  @author
+ */
+public class SectionsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Return a new machine with rotors B, Beta, III, IV and I at
+     *  SETTING, the text of a settings line of the form "* SSSS". */
+    private static Machine machine(String setting) {
+        return TestUtils.navalMachine(AZ, setting.substring(2), "(HQ) (EX)");
+    }
+
+    /** Return an input of many short sections. */
+    private String input() {
+        Random rand = new Random(13);
+        StringBuilder text = new StringBuilder();
+        for (int section = 0; section < 500; section += 1) {
+            text.append("* ");
+            for (int i = 0; i < 4; i += 1) {
+                text.append(AZ.toChar(rand.nextInt(26)));
+            }
+            text.append("\n");
+            for (int line = rand.nextInt(4); line > 0; line -= 1) {
+                int len = rand.nextInt(60);
+                for (int i = 0; i < len; i += 1) {
+                    char ch = AZ.toChar(rand.nextInt(26));
+                    text.append(i % 7 == 3 ? ' ' : ch);
+                }
+                text.append(line % 2 == 0 ? "\r\n" : "\n");
+            }
+        }
+        return text.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesSequential() throws IOException {
+        String text = input();
+        Machine seqMach = machine("* AAAA");
+        StringWriter expected = new StringWriter();
+        LineCodec seqCodec = new LineCodec(seqMach, expected);
+        Main.splitLines(new StringReader(text), new MessageSink() {
+            @Override
+            public void settings(String line) {
+                seqMach.setRotors(line.substring(2));
+            }
+
+            @Override
+            public void text(char[] buf, int off, int len)
+                throws IOException {
+                seqCodec.write(buf, off, len);
+            }
+
+            @Override
+            public void endLine() throws IOException {
+                seqCodec.endLine();
+            }
+        });
+        seqCodec.flush();
+
+        StringWriter out = new StringWriter();
+        new Sections(new StringReader(text), SectionsTest::machine,
+                     LineCodec.Case.KEEP, LineCodec.Invalid.CONVERT)
+            .run(out);
+        assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test
+    public void testErrorAfterOutput() throws IOException {
+        StringWriter out = new StringWriter();
+        StringBuilder text = new StringBuilder("* AXLE\nABC\n* AXL\nDEF\n");
+        for (int i = 0; i < 100; i += 1) {
+            text.append("* AXLE\nGHI\n");
+        }
+        try {
+            new Sections(new StringReader(text.toString()),
+                         SectionsTest::machine, LineCodec.Case.KEEP,
+                         LineCodec.Invalid.CONVERT).run(out);
+            fail("expected an error");
+        } catch (EnigmaException excp) {
+            assertEquals(3 + System.lineSeparator().length(),
+                         out.toString().length());
+        }
+    }
+
+    @Test
+    public void testReadErrorAfterOutput() {
+        StringWriter out = new StringWriter();
+        StringReader input = new StringReader("* AXLE\nABC\n* AXLE\nDEF") {
+            @Override
+            public int read(char[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, len);
+                if (n == -1) {
+                    throw new IOException("device gone");
+                }
+                return n;
+            }
+        };
+        try {
+            new Sections(input, SectionsTest::machine, LineCodec.Case.KEEP,
+                         LineCodec.Invalid.CONVERT).run(out);
+            fail("expected an error");
+        } catch (IOException excp) {
+            assertEquals("device gone", excp.getMessage());
+            assertEquals(2, out.toString().split("\\R").length);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running server (see --serve) that reads its configurations
+ *  once and then converts messages for any number of clients, so that
+ *  each request costs neither a JVM start nor a configuration parse.
+ *  It listens on a loopback TCP port or on a Unix-domain socket, and
+ *  serves each connection on a thread of its own (a virtual thread,
+ *  where the platform has them).  Each request gets a new machine, so
+ *  requests are independent whatever the connection or thread.
+ *
+ *  A connection carries any number of requests, each answered before
+ *  the next is read.  A string is sent as its length in bytes (a 4-byte
+ *  big-endian int) followed by its UTF-8 encoding.  A request is three
+ *  strings: the name of a configuration (empty for the first one the
+ *  server was given), a settings line, and message lines separated by
+ *  line terminators.  The message lines may include further settings
+ *  lines.  A reply is a status byte, OK or FAILED, followed by a string:
+ *  the converted messages, formatted as Main writes them, or the error.
+ *  @author Nathan Mehta
+ */
+class Server {
+
+    /** Status of a reply carrying converted messages. */
+    static final byte OK = 0;
+
+    /** Status of a reply carrying an error. */
+    static final byte FAILED = 1;
+
+    /** Largest string, in bytes, a request may contain. */
+    static final int MAX_STRING = 1 << 26;
+
+    /** A server converting with the configurations in CONFIGS, keyed by
+     *  name, listening on ADDRESS (see address(String)).  The first entry
+     *  of CONFIGS is the default. */
+    Server(Map<String, Main> configs, String address) {
+        if (configs.isEmpty()) {
+            throw error("no configurations to serve");
+        }
+        _configs = new LinkedHashMap<>(configs);
+        _default = configs.values().iterator().next();
+        SocketAddress addr = address(address);
+        try {
+            if (addr instanceof UnixDomainSocketAddress) {
+                Path path = ((UnixDomainSocketAddress) addr).getPath();
+                if (Files.exists(path)) {
+                    throw error("%s already exists", address);
+                }
+                _channel =
+                    ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                _socketFile = path;
+            } else {
+                _channel = ServerSocketChannel.open();
+                _socketFile = null;
+            }
+            _channel.bind(addr);
+        } catch (IOException excp) {
+            throw error("could not listen on %s: %s", address,
+                        excp.getMessage());
+        }
+    }
+
+    /** Return the socket address named by ADDRESS: a port number on the
+     *  loopback interface if ADDRESS is all digits (0 picks any free
+     *  port), and otherwise the path of a Unix-domain socket. */
+    static SocketAddress address(String address) {
+        if (address.matches("\\d{1,5}")) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                         Integer.parseInt(address));
+        }
+        return UnixDomainSocketAddress.of(address);
+    }
+
+    /** Return the configurations named by ARGS, each the name of a
+     *  configuration file or of a directory whose files NAME.conf are
+     *  configurations, read and then passed to SETOPTIONS.  Each
+     *  configuration is keyed by the name of its file, less any ".conf"
+     *  extension, in the order given (directories in name order). */
+    static Map<String, Main> configs(List<String> args,
+                                     Consumer<Main> setOptions) {
+        List<File> files = new ArrayList<>();
+        for (String arg : args) {
+            File file = new File(arg);
+            if (file.isDirectory()) {
+                String[] names = file.list((d, name) ->
+                                           name.endsWith(".conf"));
+                Arrays.sort(names);
+                for (String name : names) {
+                    files.add(new File(file, name));
+                }
+            } else {
+                files.add(file);
+            }
+        }
+        LinkedHashMap<String, Main> configs = new LinkedHashMap<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".conf")) {
+                name = name.substring(0, name.length() - ".conf".length());
+            }
+            if (configs.containsKey(name)) {
+                throw error("two configurations named %s", name);
+            }
+            Main config = new Main(file.getPath());
+            setOptions.accept(config);
+            configs.put(name, config);
+        }
+        return configs;
+    }
+
+    /** Return the address I listen on. */
+    SocketAddress localAddress() {
+        try {
+            return _channel.getLocalAddress();
+        } catch (IOException excp) {
+            throw error("server closed");
+        }
+    }
+
+    /** Accept and serve connections until I am closed. */
+    void run() {
+        ExecutorService executor = Sections.newVirtualExecutor();
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "enigma-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        try {
+            while (true) {
+                SocketChannel conn = _channel.accept();
+                executor.execute(() -> serve(conn));
+            }
+        } catch (ClosedChannelException excp) {
+            return;
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Stop accepting connections, dropping those open, and remove my
+     *  socket file, if any. */
+    void close() {
+        try {
+            _channel.close();
+            if (_socketFile != null) {
+                Files.deleteIfExists(_socketFile);
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Answer the requests on CONN until the client closes it. */
+    private void serve(SocketChannel conn) {
+        try (SocketChannel channel = conn) {
+            if (_socketFile == null) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            while (answer(in, out)) {
+                continue;
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Read a request from IN and write its reply to OUT.  Returns false
+     *  if there was no request, or if it was so malformed that nothing
+     *  further can be read. */
+    private boolean answer(DataInputStream in, DataOutputStream out)
+        throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return false;
+        }
+        long start = System.nanoTime();
+        long mark = Metrics.global().allocationMark();
+        boolean framed = false;
+        try {
+            String name = readString(first, in);
+            String settings = readString(in);
+            String messages = readString(in);
+            framed = true;
+            String result = convert(name, settings, messages);
+            out.writeByte(OK);
+            writeString(out, result);
+        } catch (EnigmaException excp) {
+            out.writeByte(FAILED);
+            writeString(out, excp.getMessage());
+        }
+        out.flush();
+        Metrics.global().allocated(mark);
+        Metrics.global().section(System.nanoTime() - start);
+        return framed;
+    }
+
+    /** Return the conversion of the settings line SETTINGS followed by
+     *  the message lines MESSAGES with the configuration named NAME. */
+    private String convert(String name, String settings, String messages)
+        throws IOException {
+        Main config = name.isEmpty() ? _default : _configs.get(name);
+        if (config == null) {
+            throw error("no configuration named %s", name);
+        }
+        StringWriter out = new StringWriter();
+        int size = Math.min(LineCodec.BUFFER_SIZE, messages.length() + 1);
+        config.convert(new StringReader(settings + "\n" + messages), out,
+                       size);
+        return out.toString();
+    }
+
+    /** Return a string, framed as a request sends it, read from IN. */
+    static String readString(DataInputStream in) throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            throw new EOFException();
+        }
+        return readString(first, in);
+    }
+
+    /** Return a string, framed as a request sends it, whose first byte
+     *  is FIRST and the rest of which is read from IN. */
+    private static String readString(int first, DataInputStream in)
+        throws IOException {
+        int len = (first << 24) | (in.readUnsignedShort() << 8)
+            | in.readUnsignedByte();
+        if (len < 0 || len > MAX_STRING) {
+            throw error("request too long");
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Write S to OUT, framed as a request or reply sends it. */
+    static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** A connection to a Server, for sending requests from Java. */
+    static class Client implements Closeable {
+
+        /** A connection to the server listening on ADDRESS (see
+         *  Server.address(String)). */
+        Client(String address) throws IOException {
+            this(address(address));
+        }
+
+        /** A connection to the server listening on ADDRESS. */
+        Client(SocketAddress address) throws IOException {
+            _channel = SocketChannel.open(address);
+            if (address instanceof InetSocketAddress) {
+                _channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            _in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(_channel)));
+            _out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(_channel)));
+        }
+
+        /** Return the conversion of the settings line SETTINGS followed
+         *  by the message lines MESSAGES with the server's configuration
+         *  named CONFIG (empty for its default).  An error on the server
+         *  is rethrown as an EnigmaException. */
+        String convert(String config, String settings, String messages)
+            throws IOException {
+            writeString(_out, config);
+            writeString(_out, settings);
+            writeString(_out, messages);
+            _out.flush();
+            byte status = _in.readByte();
+            String reply = readString(_in);
+            if (status != OK) {
+                throw error("%s", reply);
+            }
+            return reply;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _channel.close();
+        }
+
+        /** The connection. */
+        private final SocketChannel _channel;
+        /** Replies from the server. */
+        private final DataInputStream _in;
+        /** Requests to the server. */
+        private final DataOutputStream _out;
+    }
+
+    /** Configurations, by name. */
+    private final Map<String, Main> _configs;
+    /** The configuration used by requests that name none. */
+    private final Main _default;
+    /** Accepts connections. */
+    private final ServerSocketChannel _channel;
+    /** The Unix-domain socket I listen on, or null if I use TCP. */
+    private final Path _socketFile;
+}
@@ -0,0 +1,155 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Server class.
+ *  @author
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration with the naval rotors B, Beta, III, IV and I. */
+    private static final String CONFIG =
+        TestUtils.UPPER_STRING + "\n 5 3\n"
+        + " B R " + TestUtils.NAVALA.get("B") + "\n"
+        + " Beta N " + TestUtils.NAVALA.get("Beta") + "\n"
+        + " III MV " + TestUtils.NAVALA.get("III") + "\n"
+        + " IV MJ " + TestUtils.NAVALA.get("IV") + "\n"
+        + " I MQ " + TestUtils.NAVALA.get("I") + "\n";
+
+    /** A settings line for CONFIG. */
+    private static final String SETTINGS = "* B Beta III IV I AXLE (YF) (ZH)";
+
+    /** Messages for SETTINGS. */
+    private static final String MESSAGES =
+        "HYIHL BKOML IUYDC MPPSF SZW\nSQCNJ HXNUO TOBM\n";
+
+    /** Return the configurations in new files a.conf (CONFIG) and
+     *  b.conf (CONFIG, less rotor I) in a new temporary directory. */
+    private static Map<String, Main> configs() throws IOException {
+        File dir = tempDir();
+        Files.write(new File(dir, "a.conf").toPath(), CONFIG.getBytes());
+        Files.write(new File(dir, "b.conf").toPath(),
+                    CONFIG.substring(0, CONFIG.lastIndexOf(" I MQ"))
+                    .getBytes());
+        return Server.configs(Arrays.asList(dir.getPath()), main -> { });
+    }
+
+    /** Return a new temporary directory. */
+    private static File tempDir() throws IOException {
+        File dir = Files.createTempDirectory("server").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /** Return the output of Main run on a file holding CONFIG and one
+     *  holding INPUT. */
+    private static String expected(String input) throws IOException {
+        File dir = tempDir();
+        File config = new File(dir, "a.conf"), in = new File(dir, "in"),
+            out = new File(dir, "out");
+        Files.write(config.toPath(), CONFIG.getBytes());
+        Files.write(in.toPath(), input.getBytes());
+        new Main(Arrays.asList(config.getPath(), in.getPath(),
+                               out.getPath())).process();
+        return new String(Files.readAllBytes(out.toPath()));
+    }
+
+    /** Return SERVER, running on a thread of its own. */
+    private static Server start(Server server) {
+        Thread thread = new Thread(server::run);
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testTcp() throws IOException {
+        Server server = start(new Server(configs(), "0"));
+        try (Server.Client client =
+                 new Server.Client(server.localAddress())) {
+            String want = expected(SETTINGS + "\n" + MESSAGES);
+            assertEquals(want, client.convert("", SETTINGS, MESSAGES));
+            assertEquals(want, client.convert("a", SETTINGS, MESSAGES));
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        Server server = start(new Server(configs(), "0"));
+        try (Server.Client client =
+                 new Server.Client(server.localAddress())) {
+            try {
+                client.convert("c", SETTINGS, MESSAGES);
+                fail("unknown configuration accepted");
+            } catch (EnigmaException excp) {
+                assertEquals("no configuration named c", excp.getMessage());
+            }
+            try {
+                client.convert("b", SETTINGS, MESSAGES);
+                fail("missing rotor accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().length() > 0);
+            }
+            assertEquals("", client.convert("a", SETTINGS, ""));
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testUnixSocketClients() throws Exception {
+        File socket = new File(tempDir(), "enigma.sock");
+        Server server = start(new Server(configs(), socket.getPath()));
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> replies = new ArrayList<>();
+            for (int i = 0; i < 16; i += 1) {
+                String settings = "* B Beta III IV I "
+                    + (char) ('A' + i) + "AAA";
+                replies.add(clients.submit(() -> {
+                    try (Server.Client client =
+                             new Server.Client(socket.getPath())) {
+                        String reply = "";
+                        for (int k = 0; k < 10; k += 1) {
+                            reply = client.convert("a", settings, MESSAGES);
+                        }
+                        return reply;
+                    }
+                }));
+            }
+            for (int i = 0; i < 16; i += 1) {
+                String settings = "* B Beta III IV I "
+                    + (char) ('A' + i) + "AAA";
+                assertEquals(expected(settings + "\n" + MESSAGES),
+                             replies.get(i).get());
+            }
+        } finally {
+            clients.shutdownNow();
+            server.close();
+        }
+        assertFalse(socket.exists());
+    }
+}
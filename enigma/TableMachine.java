@@ -0,0 +1,177 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** An engine that converts characters exactly as a given Machine would,
+ *  using one precomputed substitution table per machine state.  For a
+ *  fixed rotor order, settings and plugboard, the states a machine passes
+ *  through are eventually periodic, so a full period of tables (plugboard
+ *  folded in) makes each conversion a single array lookup.  When the
+ *  tables for a period would exceed a memory cap, conversions are simply
+ *  delegated to the Machine.
+ *  @author Nathan Mehta
+ */
+class TableMachine {
+
+    /** Default cap on the size of the tables, in bytes. */
+    static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    /** An engine for MACHINE, whose rotors and plugboard must already be
+     *  set, that uses at most DEFAULT_MAX_BYTES of tables. */
+    TableMachine(Machine machine) {
+        this(machine, DEFAULT_MAX_BYTES);
+    }
+
+    /** An engine for MACHINE, whose rotors and plugboard must already be
+     *  set, that uses at most MAXBYTES of tables.  If the tables are
+     *  built, MACHINE is left untouched by later conversions; otherwise
+     *  (always, if MACHINE traces) conversions advance MACHINE itself. */
+    TableMachine(Machine machine, long maxBytes) {
+        _machine = machine;
+        _size = machine.alphabet().size();
+        long maxStates = _size == 0 ? 0
+            : Math.min(maxBytes / (2L * _size), Integer.MAX_VALUE / _size);
+        if (_size > Character.MAX_VALUE + 1 || maxStates == 0
+            || machine.traced()) {
+            return;
+        }
+        int[] first = machine.settings();
+        machine.step(first);
+        int[] period = findPeriod(first, maxStates);
+        if (period == null) {
+            return;
+        }
+        _loopStart = period[0];
+        _numStates = period[0] + period[1];
+        _table = new char[_numStates * _size];
+        int[] posns = first;
+        for (int k = 0; k < _numStates; k += 1) {
+            fillTable(posns, k * _size);
+            machine.step(posns);
+        }
+    }
+
+    /** Return true iff conversions are done by table lookup. */
+    boolean precomputed() {
+        return _table != null;
+    }
+
+    /** Return the number of states in the precomputed period, or 0 if
+     *  the tables were not built. */
+    int period() {
+        return _table == null ? 0 : _numStates - _loopStart;
+    }
+
+    /** Return the machine whose conversions I reproduce. */
+    Machine machine() {
+        return _machine;
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the machine. */
+    int convert(int c) {
+        if (_table == null) {
+            return _machine.convert(c);
+        }
+        int result = _table[_state * _size + c];
+        _state += 1;
+        if (_state == _numStates) {
+            _state = _loopStart;
+        }
+        return result;
+    }
+
+    /** Returns the encoding/decoding of MSG, updating the state of
+     *  the engine accordingly. */
+    String convert(String msg) {
+        if (_table == null) {
+            return _machine.convert(msg);
+        }
+        Alphabet alpha = _machine.alphabet();
+        if (alpha.wide()) {
+            StringBuilder result = new StringBuilder(msg.length());
+            for (int i = 0; i < msg.length(); ) {
+                int cp = msg.codePointAt(i);
+                i += Character.charCount(cp);
+                int c = convert(alpha.codePointToInt(cp));
+                result.appendCodePoint(alpha.toCodePoint(c));
+            }
+            return result.toString();
+        }
+        char[] result = new char[msg.length()];
+        for (int i = 0; i < msg.length(); i += 1) {
+            result[i] = alpha.toChar(convert(alpha.toInt(msg.charAt(i))));
+        }
+        return new String(result);
+    }
+
+    /** Return {mu, lambda}, the length of the lead-in and of the cycle of
+     *  the states reached from FIRST by stepping, or null if their sum
+     *  exceeds MAXSTATES.  Uses Brent's algorithm, so it needs no memory
+     *  beyond a couple of states. */
+    private int[] findPeriod(int[] first, long maxStates) {
+        int[] tortoise = first.clone(), hare = first.clone();
+        _machine.step(hare);
+        int power = 1, lambda = 1;
+        while (!Arrays.equals(tortoise, hare)) {
+            if (power == lambda) {
+                System.arraycopy(hare, 0, tortoise, 0, hare.length);
+                power *= 2;
+                lambda = 0;
+            }
+            _machine.step(hare);
+            lambda += 1;
+            if (lambda > maxStates) {
+                return null;
+            }
+        }
+        tortoise = first.clone();
+        hare = first.clone();
+        for (int i = 0; i < lambda; i += 1) {
+            _machine.step(hare);
+        }
+        int mu = 0;
+        while (!Arrays.equals(tortoise, hare)) {
+            _machine.step(tortoise);
+            _machine.step(hare);
+            mu += 1;
+            if (mu + lambda > maxStates) {
+                return null;
+            }
+        }
+        return new int[] { mu, lambda };
+    }
+
+    /** Fill _table, starting at OFFSET, with the full conversion of each
+     *  index, plugboard included, with the rotors at POSNS. */
+    private void fillTable(int[] posns, int offset) {
+        Permutation plug = _machine.plugboard();
+        int n = _machine.numRotors();
+        for (int c = 0; c < _size; c += 1) {
+            int x = plug.permute(c);
+            for (int r = n - 1; r >= 0; r -= 1) {
+                Permutation perm = _machine.getRotor(r).permutation();
+                x = perm.wrap(perm.permute(x + posns[r]) - posns[r]);
+            }
+            for (int r = 1; r < n; r += 1) {
+                Permutation perm = _machine.getRotor(r).permutation();
+                x = perm.wrap(perm.invert(x + posns[r]) - posns[r]);
+            }
+            _table[offset + c] = (char) plug.permute(x);
+        }
+    }
+
+    /** The machine I reproduce. */
+    private final Machine _machine;
+    /** Alphabet size. */
+    private final int _size;
+    /** _table[k * _size + c] converts C in the K-th state, or null. */
+    private char[] _table;
+    /** Number of states covered by _table. */
+    private int _numStates;
+    /** State that follows state _numStates - 1. */
+    private int _loopStart;
+    /** Index of the state used by the next conversion. */
+    private int _state;
+}
@@ -0,0 +1,69 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the TableMachine class.
+ *  @author
+ */
+public class TableMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Return a new machine with the naval rotors B, Beta, III, IV and I
+     *  at SETTING and plugboard PLUG. */
+    private Machine machine(String setting, String plug) {
+        return TestUtils.navalMachine(AZ, setting, plug);
+    }
+
+    /** Return a message of N letters. */
+    private String message(int n) {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            msg.append((char) ('A' + (i * i + 3 * i) % 26));
+        }
+        return msg.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMachine() {
+        String msg = message(40000);
+        TableMachine table =
+            new TableMachine(machine("AXLE", "(YF) (HZ)"));
+        assertTrue(table.precomputed());
+        assertEquals(26 * 25 * 26, table.period());
+        assertEquals(machine("AXLE", "(YF) (HZ)").convert(msg),
+                     table.convert(msg));
+    }
+
+    @Test
+    public void testDoubleStepLeadIn() {
+        String msg = message(20000);
+        TableMachine table =
+            new TableMachine(machine("AXJQ", "(AB)"));
+        assertTrue(table.precomputed());
+        assertEquals(machine("AXJQ", "(AB)").convert(msg),
+                     table.convert(msg));
+    }
+
+    @Test
+    public void testFallback() {
+        String msg = message(500);
+        Machine mach = machine("AXLE", "(YF) (HZ)");
+        TableMachine table = new TableMachine(mach, 1024);
+        assertFalse(table.precomputed());
+        assertEquals(machine("AXLE", "(YF) (HZ)").convert(msg),
+                     table.convert(msg));
+        assertEquals((4 + 500) % 26, mach.settings()[4]);
+    }
+}
@@ -18,6 +18,54 @@ class TestUtils {
         return testId + " (" + String.format(msgFormat, args) + ")";
     }
 
+    /** The rotors of the usual naval test machine, reflector first. */
+    static final String[] NAVAL_SLOTS = { "B", "Beta", "III", "IV", "I" };
+
+    /** Return the naval rotors B, Beta, I, II, III, IV and V as given
+     *  by NAVALA over ALPHA, an upper-case alphabet, keyed by name. */
+    static HashMap<String, Rotor> navalRotors(Alphabet alpha) {
+        HashMap<String, Rotor> rotors = new HashMap<>();
+        rotors.put("B", new Reflector("B", perm(NAVALA.get("B"), alpha)));
+        rotors.put("Beta",
+                   new FixedRotor("Beta", perm(NAVALA.get("Beta"), alpha)));
+        rotors.put("III", naval("III", alpha, "V"));
+        rotors.put("IV", naval("IV", alpha, "J"));
+        rotors.put("I", naval("I", alpha, "Q"));
+        rotors.put("II", naval("II", alpha, "E"));
+        rotors.put("V", naval("V", alpha, "Z"));
+        return rotors;
+    }
+
+    /** Return a machine over ALPHA, an upper-case alphabet, holding the
+     *  naval rotors NAVAL_SLOTS at SETTING, with plugboard PLUG. */
+    static Machine navalMachine(Alphabet alpha, String setting,
+                                String plug) {
+        return navalMachine(alpha, setting, plug, null);
+    }
+
+    /** Return a machine as for navalMachine(ALPHA, SETTING, PLUG) that
+     *  converts through cursors made by TRACER, unless TRACER is
+     *  null. */
+    static Machine navalMachine(Alphabet alpha, String setting,
+                                String plug, Tracer tracer) {
+        Machine mach = new Machine(alpha, 5, 3,
+                                   navalRotors(alpha).values(), tracer);
+        mach.insertRotors(NAVAL_SLOTS);
+        mach.setRotors(setting);
+        mach.setPlugboard(perm(plug, alpha));
+        return mach;
+    }
+
+    /** Return the moving naval rotor NAME over ALPHA with NOTCHES. */
+    private static Rotor naval(String name, Alphabet alpha, String notches) {
+        return new MovingRotor(name, perm(NAVALA.get(name), alpha), notches);
+    }
+
+    /** Return the permutation of ALPHA with cycles CYCLES. */
+    private static Permutation perm(String cycles, Alphabet alpha) {
+        return new Permutation(cycles, alpha);
+    }
+
     /** The naval rotors in the A (0) setting. */
     static final HashMap<String, String> NAVALA = new HashMap<>();
     static {
@@ -0,0 +1,138 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** Renders a trace file written by TraceRecorder (see --trace) in the
+ *  format of --verbose, one line per converted character.
+ *  @author Nathan Mehta
+ */
+public final class TraceDecoder {
+
+    /** Print the trace in the file named by the last of ARGS to the
+     *  standard output.  With the option --steps, each line is prefixed
+     *  by its step index within its message.  Exits with code 1 on
+     *  errors. */
+    public static void main(String... args) {
+        boolean steps = args.length == 2 && args[0].equals("--steps");
+        if (args.length != 1 && !steps) {
+            System.err.println("Usage: java enigma.TraceDecoder [--steps] "
+                               + "TRACEFILE");
+            System.exit(1);
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        try {
+            try (InputStream in =
+                     new FileInputStream(args[args.length - 1])) {
+                decode(in, out, steps);
+            } finally {
+                out.flush();
+            }
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Write the trace read from IN to OUT, prefixing each line with its
+     *  step index if STEPS. */
+    static void decode(InputStream in, Writer out, boolean steps)
+        throws IOException {
+        DataInputStream data =
+            new DataInputStream(new BufferedInputStream(in));
+        try {
+            if (data.readInt() != TraceRecorder.MAGIC) {
+                throw error("not a trace file");
+            }
+            if (data.readShort() != TraceRecorder.VERSION) {
+                throw error("unsupported trace file version");
+            }
+            Alphabet alpha = new Alphabet(data.readUTF());
+            int n = data.readInt();
+            int width = data.readUnsignedByte();
+            if (width != alpha.indexWidth()) {
+                throw error("corrupt trace file header");
+            }
+            decodeEvents(data, alpha, n, width, out, steps);
+        } catch (EOFException excp) {
+            throw error("trace file truncated");
+        }
+    }
+
+    /** Write the events read from DATA, from a trace of machines with
+     *  alphabet ALPHA, N slots, and indices of WIDTH bytes, to OUT,
+     *  prefixing each line with its step index if STEPS. */
+    private static void decodeEvents(DataInputStream data, Alphabet alpha,
+                                     int n, int width, Writer out,
+                                     boolean steps) throws IOException {
+        String nl = System.lineSeparator();
+        StringBuilder line = new StringBuilder();
+        for (long step = readStep(data); step >= 0; step = readStep(data)) {
+            line.setLength(0);
+            if (steps) {
+                line.append(step).append(' ');
+            }
+            line.append('[');
+            for (int r = 1; r < n; r += 1) {
+                line.appendCodePoint(symbol(alpha, readIndex(data, width)));
+            }
+            line.append("] ");
+            for (int stage = 0; stage < 2 * n + 2; stage += 1) {
+                if (stage > 0) {
+                    line.append(" -> ");
+                }
+                line.appendCodePoint(symbol(alpha, readIndex(data, width)));
+            }
+            out.append(line).append(nl);
+        }
+    }
+
+    /** Return the step index starting the next event of DATA, or -1 at
+     *  the end of DATA. */
+    private static long readStep(DataInputStream data) throws IOException {
+        long step = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = data.read();
+            if (b == -1) {
+                if (shift == 0) {
+                    return -1;
+                }
+                throw new EOFException();
+            }
+            step |= (long) (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return step;
+            }
+        }
+    }
+
+    /** Return the next character index of WIDTH bytes from DATA. */
+    private static int readIndex(DataInputStream data, int width)
+        throws IOException {
+        int v = 0;
+        for (int i = 0; i < width; i += 1) {
+            v = (v << 8) | data.readUnsignedByte();
+        }
+        return v;
+    }
+
+    /** Return the code point of the symbol of ALPHA with index I. */
+    private static int symbol(Alphabet alpha, int i) {
+        if (i < 0 || i >= alpha.size()) {
+            throw error("corrupt trace file");
+        }
+        return alpha.toCodePoint(i);
+    }
+}
@@ -0,0 +1,189 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.nio.file.StandardOpenOption.*;
+import static enigma.EnigmaException.*;
+
+/** Records a binary trace of conversions to a file without formatting
+ *  anything on the converting thread.  Each conversion becomes a compact
+ *  event (see RecordingCursor) appended to a preallocated ring buffer,
+ *  which a background thread drains to the file.  A full ring holds
+ *  the converting thread back, so no event is ever lost.  TraceDecoder
+ *  renders a trace file as --verbose would have.
+ *
+ *  A trace file is a header (the int MAGIC, the short VERSION, the
+ *  alphabet as a modified-UTF-8 string, the number of rotor slots as an
+ *  int, and the width in bytes of a character index) followed by events.
+ *  An event is its step index as an unsigned LEB128 varint, followed by
+ *  the settings of slots 1 and up and then the values after each stage,
+ *  each value an index of the given width, big-endian.
+ *
+ *  Events may come from one thread at a time.
+ *  @author Nathan Mehta
+ */
+class TraceRecorder implements Tracer {
+
+    /** First four bytes of a trace file ("ENGT"). */
+    static final int MAGIC = 0x454e4754;
+
+    /** Format version of trace files. */
+    static final short VERSION = 1;
+
+    /** Size in bytes of the ring (a power of 2). */
+    static final int RING_SIZE = 1 << 22;
+
+    /** A recorder writing the trace of machines with alphabet ALPHA and
+     *  NUMROTORS slots to the file named NAME, replacing its contents. */
+    TraceRecorder(String name, Alphabet alpha, int numRotors)
+        throws IOException {
+        _numRotors = numRotors;
+        _width = alpha.indexWidth();
+        _out = FileChannel.open(Paths.get(name), WRITE, CREATE,
+                                TRUNCATE_EXISTING);
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(header);
+        StringBuilder symbols = new StringBuilder();
+        for (int i = 0; i < alpha.size(); i += 1) {
+            symbols.appendCodePoint(alpha.toCodePoint(i));
+        }
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeUTF(symbols.toString());
+        data.writeInt(numRotors);
+        data.writeByte(_width);
+        writeFully(ByteBuffer.wrap(header.toByteArray()));
+        _drainer = new Thread(this::drain, "enigma-trace");
+        _drainer.setDaemon(true);
+        _drainer.start();
+    }
+
+    @Override
+    public MachineCursor cursor(MachineSpec spec, int[] posns) {
+        if (spec.numRotors() != _numRotors) {
+            throw error("trace expects %d rotors", _numRotors);
+        }
+        return new RecordingCursor(spec, posns, this);
+    }
+
+    /** Append an event for step STEP whose settings and values are the
+     *  first COUNT elements of VALUES. */
+    void record(long step, int[] values, int count) {
+        int need = 10 + count * _width;
+        if (_head + need - _drained.get() > RING_SIZE) {
+            awaitSpace(need);
+        }
+        long pos = _head;
+        for (; step >= 0x80; step >>>= 7) {
+            _ring[(int) pos++ & MASK] = (byte) (step | 0x80);
+        }
+        _ring[(int) pos++ & MASK] = (byte) step;
+        for (int i = 0; i < count; i += 1) {
+            int v = values[i];
+            for (int shift = 8 * (_width - 1); shift >= 0; shift -= 8) {
+                _ring[(int) pos++ & MASK] = (byte) (v >>> shift);
+            }
+        }
+        _head = pos;
+        _published.lazySet(pos);
+    }
+
+    /** Write out all recorded events and close the file. */
+    void close() throws IOException {
+        _closed = true;
+        LockSupport.unpark(_drainer);
+        try {
+            _drainer.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        _out.close();
+        if (_error != null) {
+            throw _error;
+        }
+    }
+
+    /** Wait until the ring has room for NEED more bytes. */
+    private void awaitSpace(int need) {
+        for (int spins = 0; _head + need - _drained.get() > RING_SIZE;
+             spins += 1) {
+            if (_error != null) {
+                throw error("could not write trace: %s",
+                            _error.getMessage());
+            } else if (spins < SPIN_LIMIT) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    }
+
+    /** Drainer thread: write published events to the file until closed. */
+    private void drain() {
+        long drained = 0;
+        try {
+            while (true) {
+                boolean closed = _closed;
+                long end = _published.get();
+                if (end == drained) {
+                    if (closed) {
+                        return;
+                    }
+                    LockSupport.parkNanos(PARK_NANOS);
+                    continue;
+                }
+                int from = (int) drained & MASK;
+                int len = (int) (end - drained);
+                int first = Math.min(len, RING_SIZE - from);
+                writeFully(ByteBuffer.wrap(_ring, from, first));
+                writeFully(ByteBuffer.wrap(_ring, 0, len - first));
+                drained = end;
+                _drained.lazySet(drained);
+            }
+        } catch (IOException excp) {
+            _error = excp;
+        }
+    }
+
+    /** Write all of BUF to the file. */
+    private void writeFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            _out.write(buf);
+        }
+    }
+
+    /** Mask for ring indices. */
+    private static final int MASK = RING_SIZE - 1;
+    /** Busy-wait iterations before a waiting thread parks. */
+    private static final int SPIN_LIMIT = 1 << 10;
+    /** Nanoseconds a waiting thread parks between checks. */
+    private static final long PARK_NANOS = 50_000;
+
+    /** Number of rotor slots of traced machines. */
+    private final int _numRotors;
+    /** Bytes per character index. */
+    private final int _width;
+    /** The trace file. */
+    private final FileChannel _out;
+    /** The ring of encoded events. */
+    private final byte[] _ring = new byte[RING_SIZE];
+    /** Number of bytes ever written to the ring (recording thread only). */
+    private long _head;
+    /** Number of bytes ever published to the drainer. */
+    private final AtomicLong _published = new AtomicLong();
+    /** Number of bytes ever written to the file. */
+    private final AtomicLong _drained = new AtomicLong();
+    /** Writes the ring to _out. */
+    private final Thread _drainer;
+    /** True once no more events will be recorded. */
+    private volatile boolean _closed;
+    /** The error that stopped the drainer, if any. */
+    private volatile IOException _error;
+}
@@ -0,0 +1,87 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the TraceRecorder and TraceDecoder
+ *  classes.
+ *  @author
+ */
+public class TraceRecorderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Return a machine with the naval rotors B, Beta, III, IV and I,
+     *  converting through cursors made by TRACER. */
+    private Machine machine(Tracer tracer) {
+        return TestUtils.navalMachine(AZ, "AXLE", "(HQ) (EX)", tracer);
+    }
+
+    /** Return the trace in the file FILE, decoded with step indices if
+     *  STEPS. */
+    private String decode(File file, boolean steps) throws IOException {
+        StringWriter out = new StringWriter();
+        try (InputStream in = new FileInputStream(file)) {
+            TraceDecoder.decode(in, out, steps);
+        }
+        return out.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testDecodesAsVerbose() throws IOException {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        ByteArrayOutputStream verbose = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(verbose);
+        Machine traced = machine((spec, posns) ->
+            new TracingCursor(spec, posns, out));
+        String expected = traced.convert(msg) + traced.convert(msg);
+
+        File file = File.createTempFile("trace", ".bin");
+        file.deleteOnExit();
+        TraceRecorder recorder =
+            new TraceRecorder(file.getPath(), AZ, 5);
+        Machine recorded = machine(recorder);
+        String result = recorded.convert(msg) + recorded.convert(msg);
+        recorder.close();
+        assertEquals(expected, result);
+        assertEquals(verbose.toString(), decode(file, false));
+    }
+
+    @Test
+    public void testStepIndices() throws IOException {
+        File file = File.createTempFile("trace", ".bin");
+        file.deleteOnExit();
+        TraceRecorder recorder =
+            new TraceRecorder(file.getPath(), AZ, 5);
+        Machine mach = machine(recorder);
+        mach.convert("AB");
+        mach.advance(200);
+        mach.convert("C");
+        mach.setRotors("AAAA");
+        mach.convert("D");
+        recorder.close();
+        String[] lines = decode(file, true).split("\\R");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("1 [AXLF] A -> "));
+        assertTrue(lines[1].startsWith("2 [AXLG] B -> "));
+        assertTrue(lines[2].startsWith("203 ["));
+        assertTrue(lines[3].startsWith("1 [AAAB] D -> "));
+    }
+}
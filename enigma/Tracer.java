@@ -0,0 +1,13 @@
+package enigma;
+
+/** Makes the cursors of machines that trace their conversions.  A
+ *  Machine built with a Tracer converts through the cursors it makes
+ *  rather than through plain MachineCursors.
+ *  @author Nathan Mehta
+ */
+interface Tracer {
+
+    /** Return a new tracing cursor on SPEC with rotor settings POSNS,
+     *  indexed by slot. */
+    MachineCursor cursor(MachineSpec spec, int[] posns);
+}
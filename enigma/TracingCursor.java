@@ -0,0 +1,62 @@
+package enigma;
+
+import java.io.PrintStream;
+
+/** A MachineCursor that reports each conversion as it makes it, one line
+ *  per character, giving the rotor settings after stepping and the
+ *  character after the plugboard, after each rotor in turn, and after
+ *  the plugboard again:
+ *      [AXLF] F -> F -> ... -> W
+ *  Tracing is confined to this class, so that untraced cursors carry no
+ *  trace code at all.
+ *  @author Nathan Mehta
+ */
+class TracingCursor extends MachineCursor {
+
+    /** A cursor on SPEC with rotor settings POSNS, indexed by slot, that
+     *  writes its trace to OUT. */
+    TracingCursor(MachineSpec spec, int[] posns, PrintStream out) {
+        super(spec, posns);
+        _out = out;
+    }
+
+    @Override
+    int convert(int c) {
+        step();
+        MachineSpec spec = spec();
+        Alphabet alpha = spec.alphabet();
+        int n = spec.numRotors();
+        _line.setLength(0);
+        _line.append('[');
+        for (int r = 1; r < n; r += 1) {
+            _line.appendCodePoint(alpha.toCodePoint(setting(r)));
+        }
+        _line.append("] ");
+        trace(alpha, c);
+        c = spec.plugboard().permute(c);
+        trace(alpha, c);
+        for (int r = n - 1; r >= 0; r -= 1) {
+            c = spec.rotor(r).convertForward(c, setting(r));
+            trace(alpha, c);
+        }
+        for (int r = 1; r < n; r += 1) {
+            c = spec.rotor(r).convertBackward(c, setting(r));
+            trace(alpha, c);
+        }
+        c = spec.plugboard().permute(c);
+        _line.appendCodePoint(alpha.toCodePoint(c))
+            .append(System.lineSeparator());
+        _out.print(_line);
+        return c;
+    }
+
+    /** Add C (an index into ALPHA) and an arrow to the current line. */
+    private void trace(Alphabet alpha, int c) {
+        _line.appendCodePoint(alpha.toCodePoint(c)).append(" -> ");
+    }
+
+    /** Destination of the trace. */
+    private final PrintStream _out;
+    /** The trace line being built. */
+    private final StringBuilder _line = new StringBuilder();
+}
@@ -16,7 +16,17 @@ public class UnitTest {
         }
         System.exit(textui.runClasses(PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                MachineTest.class,
+                TableMachineTest.class,
+                LineCodecTest.class,
+                PipelineTest.class,
+                SectionsTest.class,
+                BatchTest.class,
+                TraceRecorderTest.class,
+                MetricsTest.class,
+                ServerTest.class,
+                ConfigParserTest.class,
+                CompiledConfigTest.class));
     }
 
 }